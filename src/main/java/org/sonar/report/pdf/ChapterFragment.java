@@ -0,0 +1,250 @@
+/*
+ * SonarQube PDF Report
+ * Copyright (C) 2010 klicap - ingenieria del puzle
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.report.pdf;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.sonar.report.pdf.util.IntermediatePdf;
+
+import com.lowagie.text.Document;
+import com.lowagie.text.DocumentException;
+import com.lowagie.text.Paragraph;
+import com.lowagie.text.pdf.PdfDestination;
+import com.lowagie.text.pdf.PdfImportedPage;
+import com.lowagie.text.pdf.PdfOutline;
+import com.lowagie.text.pdf.PdfPageEvent;
+import com.lowagie.text.pdf.PdfPageEventHelper;
+import com.lowagie.text.pdf.PdfReader;
+import com.lowagie.text.pdf.PdfWriter;
+
+/**
+ * Chapter rendered in a document of its own (i.e. by a worker thread), then
+ * appended to the report. The fragment has no header nor page numbers: its
+ * pages are imported in the report, where the report page events print them.
+ * Chapter and section events are recorded while the fragment is rendered and
+ * replayed on the imported pages, so TOC entries and bookmarks get the page
+ * numbers of the report.
+ */
+public class ChapterFragment extends PdfPageEventHelper {
+
+  /**
+   * Version of the chapters layout, cached fragments of other versions are
+   * not used. It must be changed when the chapters content changes.
+   */
+  public static final String TEMPLATE_VERSION = "4";
+
+  private static final int CHAPTER_DEPTH = 1;
+  private static final int CHAPTER_END = 0;
+  private static final String UTF8 = "UTF-8";
+  private static final String SEPARATOR = "\t";
+
+  private IntermediatePdf pdf;
+  private Document document;
+
+  // Chapter and section events in rendering order
+  private List<Entry> entries = new ArrayList<Entry>();
+
+  public ChapterFragment(final boolean spill) throws IOException {
+    this.pdf = new IntermediatePdf(spill);
+  }
+
+  private ChapterFragment(final IntermediatePdf pdf) {
+    this.pdf = pdf;
+  }
+
+  /**
+   * Fragment rendered in a previous run (see {@link #store(File, File)}).
+   */
+  public static ChapterFragment load(final File pdfFile, final File entriesFile)
+      throws IOException {
+    ChapterFragment fragment = new ChapterFragment(IntermediatePdf.open(pdfFile));
+    BufferedReader reader = new BufferedReader(new InputStreamReader(
+        new FileInputStream(entriesFile), UTF8));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        String[] fields = line.split(SEPARATOR, 4);
+        if (fields.length != 4) {
+          throw new IOException("Invalid fragment entry in " + entriesFile + ": " + line);
+        }
+        int depth = Integer.parseInt(fields[1]);
+        fragment.entries.add(new Entry(Integer.parseInt(fields[0]), depth,
+            Float.parseFloat(fields[2]), depth == CHAPTER_END ? null
+                : new Paragraph(fields[3])));
+      }
+    } catch (NumberFormatException e) {
+      throw new IOException("Invalid fragment entry in " + entriesFile);
+    } finally {
+      reader.close();
+    }
+    return fragment;
+  }
+
+  /**
+   * Store the rendered fragment (document and chapter events). It must be
+   * called before the fragment is appended.
+   */
+  public void store(final File pdfFile, final File entriesFile) throws IOException {
+    OutputStream out = new BufferedOutputStream(new FileOutputStream(pdfFile));
+    try {
+      pdf.writeTo(out);
+    } finally {
+      out.close();
+    }
+    Writer writer = new OutputStreamWriter(new FileOutputStream(entriesFile), UTF8);
+    try {
+      for (Entry entry : entries) {
+        writer.write(entry.page + SEPARATOR + entry.depth + SEPARATOR + entry.position
+            + SEPARATOR + (entry.title != null ? entry.title.getContent().replace('\n', ' ') : "") + "\n");
+      }
+    } finally {
+      writer.close();
+    }
+  }
+
+  /**
+   * Open the fragment on the given (new) document, the chapter is added to it
+   * by the caller. The chapter number must be explicit (not a
+   * ChapterAutoNumber): fragments are numbered before they are appended.
+   *
+   * @param compressionLevel
+   *          Deflate level of the page contents, they are copied as they are
+   *          to the report
+   */
+  public Document open(final Document document, final int compressionLevel) throws DocumentException {
+    this.document = document;
+    PdfWriter writer = PdfWriter.getInstance(document, pdf.getOutputStream());
+    writer.setCompressionLevel(compressionLevel);
+    writer.setPageEvent(this);
+    document.open();
+    return document;
+  }
+
+  /**
+   * Close the fragment document, once the chapter is added.
+   */
+  public void close() {
+    document.close();
+    document = null;
+  }
+
+  /**
+   * Append the fragment pages to the report document. The fragment is deleted.
+   */
+  public void appendTo(final Document document, final PdfWriter writer)
+      throws IOException {
+    try {
+      PdfReader reader = pdf.getReader();
+      PdfPageEvent events = writer.getPageEvent();
+      List<PdfOutline> outlines = new ArrayList<PdfOutline>();
+      outlines.add(writer.getRootOutline());
+      int next = 0;
+      for (int i = 1; i <= reader.getNumberOfPages(); i++) {
+        document.newPage();
+        PdfImportedPage page = writer.getImportedPage(reader, i);
+        writer.getDirectContentUnder().addTemplate(page, 0, 0);
+        while (next < entries.size() && entries.get(next).page == i) {
+          replay(entries.get(next), document, writer, events, outlines);
+          next++;
+        }
+      }
+      writer.freeReader(reader);
+    } finally {
+      pdf.delete();
+    }
+  }
+
+  /**
+   * Delete the fragment without appending it (i.e. the report failed).
+   */
+  public void delete() {
+    pdf.delete();
+  }
+
+  private void replay(final Entry entry, final Document document,
+      final PdfWriter writer, final PdfPageEvent events,
+      final List<PdfOutline> outlines) {
+    if (entry.depth == CHAPTER_END) {
+      if (events != null) {
+        events.onChapterEnd(writer, document, entry.position);
+      }
+      return;
+    }
+    // Bookmark under the last bookmark of the upper level
+    while (outlines.size() > entry.depth) {
+      outlines.remove(outlines.size() - 1);
+    }
+    outlines.add(new PdfOutline(outlines.get(outlines.size() - 1),
+        new PdfDestination(PdfDestination.FITH, entry.position), entry.title, true));
+    if (events != null) {
+      if (entry.depth == CHAPTER_DEPTH) {
+        events.onChapter(writer, document, entry.position, entry.title);
+      } else {
+        events.onSection(writer, document, entry.position, entry.depth, entry.title);
+      }
+    }
+  }
+
+  @Override
+  public void onChapter(final PdfWriter writer, final Document document,
+      final float position, final Paragraph title) {
+    entries.add(new Entry(writer.getPageNumber(), CHAPTER_DEPTH, position, title));
+  }
+
+  @Override
+  public void onChapterEnd(final PdfWriter writer, final Document document,
+      final float position) {
+    entries.add(new Entry(writer.getPageNumber(), CHAPTER_END, position, null));
+  }
+
+  @Override
+  public void onSection(final PdfWriter writer, final Document document,
+      final float position, final int depth, final Paragraph title) {
+    entries.add(new Entry(writer.getPageNumber(), depth, position, title));
+  }
+
+  private static class Entry {
+
+    private final int page;
+    private final int depth;
+    private final float position;
+    private final Paragraph title;
+
+    public Entry(final int page, final int depth, final float position,
+        final Paragraph title) {
+      this.page = page;
+      this.depth = depth;
+      this.position = position;
+      this.title = title;
+    }
+  }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * SonarQube PDF Report
+ * Copyright (C) 2010 klicap - ingenieria del puzle
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.report.pdf;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Rendered chapters kept on disk between runs, keyed by a hash of the
+ * chapter data (see {@link org.sonar.report.pdf.util.ProjectDigest}). Each
+ * entry is a PDF fragment and the chapter events recorded while it was
+ * rendered.
+ */
+public class ChapterFragmentCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ChapterFragmentCache.class);
+
+  private static final String PDF_EXTENSION = ".pdf";
+  private static final String ENTRIES_EXTENSION = ".toc";
+
+  private File directory;
+  private int hits;
+  private int misses;
+
+  public ChapterFragmentCache(final File directory) {
+    this.directory = directory;
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      LOG.warn("Can not create chapters cache directory " + directory);
+    }
+  }
+
+  /**
+   * @return The cached fragment, or null if the chapter has not been rendered
+   *         with the same data
+   */
+  public ChapterFragment get(final String key) {
+    File pdfFile = new File(directory, key + PDF_EXTENSION);
+    File entriesFile = new File(directory, key + ENTRIES_EXTENSION);
+    ChapterFragment fragment = null;
+    if (pdfFile.isFile() && entriesFile.isFile()) {
+      try {
+        fragment = ChapterFragment.load(pdfFile, entriesFile);
+      } catch (IOException e) {
+        LOG.error("Can not read cached chapter " + pdfFile, e);
+      }
+    }
+    synchronized (this) {
+      if (fragment != null) {
+        hits++;
+      } else {
+        misses++;
+      }
+    }
+    return fragment;
+  }
+
+  /**
+   * Store a fragment just rendered (before it is appended to the report).
+   */
+  public void put(final String key, final ChapterFragment fragment) {
+    // Written to temporary files first: concurrent runs never read a partial
+    // fragment. The document is renamed last, it marks a complete entry.
+    String suffix = "." + Thread.currentThread().getId() + "." + System.nanoTime() + ".tmp";
+    File pdfFile = new File(directory, key + PDF_EXTENSION);
+    File entriesFile = new File(directory, key + ENTRIES_EXTENSION);
+    File pdfTmp = new File(directory, pdfFile.getName() + suffix);
+    File entriesTmp = new File(directory, entriesFile.getName() + suffix);
+    try {
+      fragment.store(pdfTmp, entriesTmp);
+      if (!entriesTmp.renameTo(entriesFile) || !pdfTmp.renameTo(pdfFile)) {
+        LOG.warn("Can not store cached chapter " + pdfFile);
+      }
+    } catch (IOException e) {
+      LOG.error("Can not store cached chapter " + pdfFile, e);
+    } finally {
+      if (pdfTmp.exists() && !pdfTmp.delete()) {
+        pdfTmp.deleteOnExit();
+      }
+      if (entriesTmp.exists() && !entriesTmp.delete()) {
+        entriesTmp.deleteOnExit();
+      }
+    }
+  }
+
+  public synchronized void logStatistics() {
+    int total = hits + misses;
+    if (total > 0) {
+      LOG.info("Chapters cache: " + hits + " hits, " + misses + " misses ("
+          + (100 * hits / total) + "% hit rate)");
+    }
+  }
+
+}
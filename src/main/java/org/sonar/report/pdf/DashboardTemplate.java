@@ -0,0 +1,428 @@
+/*
+ * SonarQube PDF Report
+ * Copyright (C) 2010 klicap - ingenieria del puzle
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.report.pdf;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.report.pdf.entity.Measure;
+import org.sonar.report.pdf.entity.Project;
+import org.sonar.report.pdf.util.EmbeddedFonts;
+import org.sonar.report.pdf.util.MetricKeys;
+
+import com.lowagie.text.Chunk;
+import com.lowagie.text.Document;
+import com.lowagie.text.DocumentException;
+import com.lowagie.text.Element;
+import com.lowagie.text.Font;
+import com.lowagie.text.Image;
+import com.lowagie.text.Phrase;
+import com.lowagie.text.Rectangle;
+import com.lowagie.text.pdf.ColumnText;
+import com.lowagie.text.pdf.PdfContentByte;
+import com.lowagie.text.pdf.PdfPCell;
+import com.lowagie.text.pdf.PdfPCellEvent;
+import com.lowagie.text.pdf.PdfPTable;
+import com.lowagie.text.pdf.PdfPageEventHelper;
+import com.lowagie.text.pdf.PdfTemplate;
+import com.lowagie.text.pdf.PdfWriter;
+
+/**
+ * Dashboard of the executive and workbook reports. Each group of measures
+ * (static analysis, dynamic analysis, coding rules issues) has a frame with
+ * its heading and titles, drawn once by document in a template. The
+ * dashboard of a project (or module) is a one-cell table by group: the frame
+ * is stamped in the cell, then the values and tendency icons are drawn at
+ * the positions of their slots in the frame. The layout is the one of the
+ * nested tables the dashboard was made of.
+ */
+public class DashboardTemplate {
+
+  private static final Logger LOG = LoggerFactory.getLogger(DashboardTemplate.class);
+
+  private static final float PADDING = 2;
+
+  // Headings are paragraphs: default leading is 1.5 times the font size
+  private static final float HEADING_LEADING = 1.5f * Style.UNDERLINED_FONT
+      .getSize();
+
+  private static final float SPACING_BEFORE = 10;
+  private static final float SPACING_AFTER = 20;
+
+  // Default width percentage of the PdfPTable
+  private static final float TABLE_WIDTH = 0.8f;
+
+  private static final int COLUMNS = 3;
+
+  private final PDFReporter reporter;
+  private final float width;
+  private final Group[] groups;
+
+  // Frames of the groups by open document: <writer, frames>
+  private final Map<PdfWriter, PdfTemplate[]> frames = new IdentityHashMap<PdfWriter, PdfTemplate[]>();
+
+  private DashboardTemplate(final PDFReporter reporter, final float width) {
+    this.reporter = reporter;
+    this.width = width;
+    groups = new Group[] {
+        new Group("general.static_analysis",
+            new Block("general.lines_of_code", MetricKeys.NCLOC, "",
+                MetricKeys.PACKAGES, " packages",
+                MetricKeys.CLASSES, " classes",
+                MetricKeys.FUNCTIONS, " methods",
+                MetricKeys.DUPLICATED_LINES_DENSITY, " duplicated lines"),
+            new Block("general.comments", MetricKeys.COMMENT_LINES_DENSITY, "",
+                MetricKeys.COMMENT_LINES, " comment lines"),
+            new Block("general.complexity", MetricKeys.FUNCTION_COMPLEXITY, "",
+                MetricKeys.CLASS_COMPLEXITY, " /class",
+                MetricKeys.COMPLEXITY, " decision points")),
+        new Group("general.dynamic_analysis",
+            new Block("general.code_coverage", MetricKeys.COVERAGE, " coverage",
+                MetricKeys.TESTS, " tests"),
+            new Block("general.test_success", MetricKeys.TEST_SUCCESS_DENSITY, "",
+                MetricKeys.TEST_FAILURES, " failures",
+                MetricKeys.TEST_ERRORS, " errors")),
+        new Group("general.coding_rules_violations",
+            new Block("general.technical_debt", MetricKeys.TECHNICAL_DEBT, ""),
+            new Block("general.violations", MetricKeys.VIOLATIONS, "")) };
+  }
+
+  /**
+   * @param reporter
+   *          Texts, tendency icons and embedded fonts of the report
+   * @param width
+   *          Width of the text of the report documents
+   */
+  public static DashboardTemplate getInstance(final PDFReporter reporter,
+      final float width) {
+    return new DashboardTemplate(reporter, width);
+  }
+
+  /**
+   * Tables of the project dashboard, one by group of measures. The dashboard
+   * starts one line below the previous content.
+   */
+  public PdfPTable[] getTables(final Project project) {
+    PdfPTable[] tables = new PdfPTable[groups.length];
+    for (int i = 0; i < groups.length; i++) {
+      PdfPTable table = new PdfPTable(1);
+      if (i == 0) {
+        table.setSpacingBefore(HEADING_LEADING);
+      }
+      table.setTotalWidth(width);
+      table.setLockedWidth(true);
+      PdfPCell cell = new PdfPCell();
+      cell.setBorder(Rectangle.NO_BORDER);
+      cell.setPadding(0);
+      cell.setFixedHeight(groups[i].getHeight());
+      cell.setCellEvent(new DashboardEvent(i, project));
+      table.addCell(cell);
+      tables[i] = table;
+    }
+    return tables;
+  }
+
+  /**
+   * Metrics printed in the dashboard.
+   */
+  public Set<String> getMetricKeys() {
+    Set<String> metricKeys = new TreeSet<String>();
+    for (Group group : groups) {
+      for (Block block : group.getBlocks()) {
+        metricKeys.add(block.value.metric);
+        for (Slot detail : block.details) {
+          metricKeys.add(detail.metric);
+        }
+      }
+    }
+    return metricKeys;
+  }
+
+  /**
+   * Frame of the group in the document of the writer, the slots positions
+   * are set when the first frame is drawn.
+   */
+  private synchronized PdfTemplate getFrame(final PdfWriter writer,
+      final int group) {
+    PdfTemplate[] writerFrames = frames.get(writer);
+    if (writerFrames == null) {
+      writerFrames = new PdfTemplate[groups.length];
+      frames.put(writer, writerFrames);
+      // The frames of the document are released when it is closed
+      writer.setPageEvent(new PdfPageEventHelper() {
+        @Override
+        public void onCloseDocument(final PdfWriter closed, final Document document) {
+          releaseFrames(closed);
+        }
+      });
+    }
+    if (writerFrames[group] == null) {
+      Group frameGroup = groups[group];
+      PdfTemplate frame = writer.getDirectContent().createTemplate(width,
+          frameGroup.getHeight());
+      Phrase heading = new Phrase(reporter.getTextProperty(frameGroup
+          .getHeadingKey()), Style.UNDERLINED_FONT);
+      PdfPTable labels = frameGroup.createTable();
+      EmbeddedFonts embeddedFonts = reporter.getEmbeddedFonts();
+      if (embeddedFonts != null) {
+        embeddedFonts.apply(heading);
+      }
+      float top = frameGroup.getHeight() - HEADING_LEADING;
+      ColumnText.showTextAligned(frame, Element.ALIGN_LEFT, heading, 0, top, 0);
+      labels.writeSelectedRows(0, -1, width * (1 - TABLE_WIDTH) / 2, top
+          - SPACING_BEFORE, frame);
+      writerFrames[group] = frame;
+    }
+    return writerFrames[group];
+  }
+
+  private synchronized void releaseFrames(final PdfWriter writer) {
+    frames.remove(writer);
+  }
+
+  /**
+   * Group of measures: heading, and blocks of measures in columns.
+   */
+  private final class Group {
+
+    private final String headingKey;
+    private final Block[] blocks;
+    private float height = -1;
+
+    public Group(final String headingKey, final Block... blocks) {
+      this.headingKey = headingKey;
+      this.blocks = blocks;
+    }
+
+    public String getHeadingKey() {
+      return headingKey;
+    }
+
+    public synchronized float getHeight() {
+      if (height < 0) {
+        height = HEADING_LEADING + SPACING_BEFORE
+            + createTable().getTotalHeight() + SPACING_AFTER;
+      }
+      return height;
+    }
+
+    /**
+     * Table of the titles, with empty slots for values and icons, in the
+     * fonts it is drawn with (its height depends on them).
+     */
+    public PdfPTable createTable() {
+      PdfPTable table = new PdfPTable(COLUMNS);
+      Style.noBorderTable(table);
+      for (Block block : blocks) {
+        table.addCell(block.createTable());
+      }
+      table.completeRow();
+      table.setTotalWidth(width * TABLE_WIDTH);
+      EmbeddedFonts embeddedFonts = reporter.getEmbeddedFonts();
+      if (embeddedFonts != null) {
+        embeddedFonts.apply(table);
+      }
+      return table;
+    }
+
+    public Block[] getBlocks() {
+      return blocks;
+    }
+  }
+
+  /**
+   * Measures of a column: title, main value with its tendency, and details.
+   */
+  private final class Block {
+
+    private final String titleKey;
+    private final Slot value;
+    private final Slot tendency;
+    private final Slot[] details;
+
+    /**
+     * @param details
+     *          metric keys and suffixes of the details
+     */
+    public Block(final String titleKey, final String metric,
+        final String suffix, final String... details) {
+      this.titleKey = titleKey;
+      value = new Slot(metric, suffix, Style.DASHBOARD_DATA_FONT);
+      tendency = new Slot(metric, null, null);
+      this.details = new Slot[details.length / 2];
+      for (int i = 0; i < this.details.length; i++) {
+        this.details[i] = new Slot(details[2 * i], details[2 * i + 1],
+            Style.DASHBOARD_DATA_FONT_2);
+      }
+    }
+
+    public PdfPTable createTable() {
+      PdfPTable table = new PdfPTable(1);
+      Style.noBorderTable(table);
+      table.addCell(new Phrase(reporter.getTextProperty(titleKey),
+          Style.DASHBOARD_TITLE_FONT));
+      PdfPTable tendencyTable = new PdfPTable(2);
+      Style.noBorderTable(tendencyTable);
+      tendencyTable.getDefaultCell().setFixedHeight(Style.TENDENCY_ICONS_HEIGHT);
+      tendencyTable.addCell(value.createCell(tendencyTable.getDefaultCell()));
+      PdfPCell tendencyCell = new PdfPCell();
+      tendencyCell.setBorder(0);
+      tendencyCell.setPadding(PADDING);
+      tendencyCell.setFixedHeight(Style.TENDENCY_ICONS_HEIGHT);
+      tendencyCell.setCellEvent(tendency);
+      tendencyTable.addCell(tendencyCell);
+      table.addCell(tendencyTable);
+      for (Slot detail : details) {
+        table.addCell(detail.createCell(table.getDefaultCell()));
+      }
+      return table;
+    }
+
+    public void draw(final Project project, final PdfContentByte canvas,
+        final float x, final float y) {
+      value.drawText(project, canvas, x, y);
+      tendency.drawIcon(project, canvas, x, y);
+      for (Slot detail : details) {
+        detail.drawText(project, canvas, x, y);
+      }
+    }
+  }
+
+  /**
+   * Value (text) or tendency icon of a metric. Its position in the frame is
+   * recorded when the first frame is drawn.
+   */
+  private final class Slot implements PdfPCellEvent {
+
+    private final String metric;
+    private final String suffix;
+    private final Font font;
+    private Rectangle position;
+
+    public Slot(final String metric, final String suffix, final Font font) {
+      this.metric = metric;
+      this.suffix = suffix;
+      this.font = font;
+    }
+
+    /**
+     * Empty cell of the height of a line of the value.
+     */
+    public PdfPCell createCell(final PdfPCell defaultCell) {
+      PdfPCell cell = new PdfPCell(defaultCell);
+      if (cell.getFixedHeight() <= 0) {
+        cell.setFixedHeight(font.getSize() + cell.getEffectivePaddingTop()
+            + cell.getEffectivePaddingBottom());
+      }
+      cell.setCellEvent(this);
+      return cell;
+    }
+
+    public void cellLayout(final PdfPCell cell, final Rectangle rect,
+        final PdfContentByte[] canvases) {
+      if (position == null) {
+        position = new Rectangle(rect);
+      }
+    }
+
+    /**
+     * Value written as in a cell, on one line: its size is reduced if it is
+     * wider than the slot.
+     */
+    public void drawText(final Project project, final PdfContentByte canvas,
+        final float x, final float y) {
+      Measure measure = project.getMeasure(metric);
+      Phrase text = new Phrase(measure.getFormatValue() + suffix, font);
+      EmbeddedFonts embeddedFonts = reporter.getEmbeddedFonts();
+      if (embeddedFonts != null) {
+        embeddedFonts.apply(text);
+      }
+      float left = x + position.getLeft() + PADDING;
+      float right = x + position.getRight() - PADDING;
+      Chunk chunk = (Chunk) text.get(0);
+      float textWidth = chunk.getWidthPoint();
+      if (textWidth > right - left) {
+        Font reduced = new Font(chunk.getFont());
+        reduced.setSize(chunk.getFont().getSize() * (right - left) / textWidth);
+        chunk.setFont(reduced);
+      }
+      ColumnText column = new ColumnText(canvas);
+      column.setSimpleColumn(left, y + position.getBottom() + PADDING, right,
+          y + position.getTop() - PADDING);
+      column.setLeading(0, 1);
+      column.addText(text);
+      try {
+        column.go();
+      } catch (DocumentException e) {
+        LOG.error("Can not draw dashboard value", e);
+      }
+    }
+
+    /**
+     * Tendency icon at the position of the icon cell.
+     */
+    public void drawIcon(final Project project, final PdfContentByte canvas,
+        final float x, final float y) {
+      Measure measure = project.getMeasure(metric);
+      Image icon = reporter.getTendencyImage(measure.getQualitativeTendency(),
+          measure.getQuantitativeTendency());
+      if (icon != null) {
+        icon.setAbsolutePosition(x + position.getLeft() + PADDING, y
+            + position.getTop() - PADDING - icon.getScaledHeight());
+        try {
+          canvas.addImage(icon);
+        } catch (DocumentException e) {
+          LOG.error("Can not draw tendency icon", e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Stamp the frame of the group in the cell, and draw the project values.
+   */
+  private final class DashboardEvent implements PdfPCellEvent {
+
+    private final int group;
+    private final Project project;
+
+    public DashboardEvent(final int group, final Project project) {
+      this.group = group;
+      this.project = project;
+    }
+
+    public void cellLayout(final PdfPCell cell, final Rectangle rect,
+        final PdfContentByte[] canvases) {
+      PdfContentByte canvas = canvases[PdfPTable.TEXTCANVAS];
+      PdfTemplate frame = getFrame(canvas.getPdfWriter(), group);
+      float x = rect.getLeft();
+      float y = rect.getBottom();
+      canvas.addTemplate(frame, x, y);
+      for (Block block : groups[group].getBlocks()) {
+        block.draw(project, canvas, x, y);
+      }
+    }
+  }
+
+}
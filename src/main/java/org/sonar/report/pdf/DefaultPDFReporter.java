@@ -82,6 +82,11 @@ public class DefaultPDFReporter extends PDFReporter {
 
   }
 
+  @Override
+  protected void prefetchCharts(final Project project) {
+    prefetchCCNDistributions(project);
+  }
+
   @Override
   protected void printPdfBody(final Document document) throws DocumentException,
       IOException, ReportException {
@@ -96,12 +101,13 @@ public class DefaultPDFReporter extends PDFReporter {
         getTextProperty("main.chapter1.subtitle1"), Style.TITLE_FONT));
     Project project = super.getProject();
     printDashboard(project, section11);
+    flushChapter(document, chapter1);
     // Section 1.2
     Section section12 = chapter1.addSection(new Paragraph(
         getTextProperty("main.chapter1.subtitle2"), Style.TITLE_FONT));
     printProjectInfo(project, section12);
 
-    document.add(chapter1);
+    addChapter(document, chapter1);
 
     // Subprojects Chapters (2, 3, 4, ...)
     Iterator<Project> it = project.getSubprojects().iterator();
@@ -113,10 +119,11 @@ public class DefaultPDFReporter extends PDFReporter {
       Section sectionX1 = subprojectChapter.addSection(new Paragraph(
           getTextProperty("main.chapter2.subtitle2X1"), Style.TITLE_FONT));
       printDashboard(subproject, sectionX1);
+      flushChapter(document, subprojectChapter);
       Section sectionX2 = subprojectChapter.addSection(new Paragraph(
           getTextProperty("main.chapter2.subtitle2X2"), Style.TITLE_FONT));
       printProjectInfo(subproject, sectionX2);
-      document.add(subprojectChapter);
+      addChapter(document, subprojectChapter);
     }
   }
 
@@ -124,10 +131,9 @@ public class DefaultPDFReporter extends PDFReporter {
       throws DocumentException {
     PdfPTable dashboard = new PdfPTable(3);
     dashboard.getDefaultCell().setBorderColor(Color.WHITE);
-    Font titleFont = new Font(Font.TIMES_ROMAN, 14, Font.BOLD, Color.BLACK);
-    Font dataFont = new Font(Font.TIMES_ROMAN, 14, Font.BOLD, Color.GRAY);
-    Font dataFont2 = new Font(Font.TIMES_ROMAN, 10, Font.BOLD, new Color(100,
-        150, 190));
+    Font titleFont = Style.DASHBOARD_TITLE_FONT;
+    Font dataFont = Style.DASHBOARD_DATA_FONT;
+    Font dataFont2 = Style.DASHBOARD_DATA_FONT_2;
 
     PdfPTable linesOfCode = new PdfPTable(1);
     linesOfCode.getDefaultCell().setBorderColor(Color.WHITE);
@@ -319,11 +325,12 @@ public class DefaultPDFReporter extends PDFReporter {
         largeLogo = this.getClass().getClassLoader()
             .getResource(super.getConfigProperty("front.page.logo"));
       }
-      Image logoImage = Image.getInstance(largeLogo);
+      Image logoImage = getLogoImage(largeLogo, 0, 0);
       Rectangle pageSize = frontPageDocument.getPageSize();
-      float positionX = pageSize.getWidth() / 2f - logoImage.getWidth() / 2f;
+      float positionX = pageSize.getWidth() / 2f
+          - logoImage.getScaledWidth() / 2f;
       logoImage.setAbsolutePosition(positionX,
-          pageSize.getHeight() - logoImage.getHeight() - 100);
+          pageSize.getHeight() - logoImage.getScaledHeight() - 100);
       frontPageDocument.add(logoImage);
 
       PdfPTable title = new PdfPTable(1);
@@ -339,10 +346,11 @@ public class DefaultPDFReporter extends PDFReporter {
       title.addCell(new Phrase(projectRow, Style.FRONTPAGE_FONT_1));
       title.addCell(new Phrase(descriptionRow, Style.FRONTPAGE_FONT_2));
       title.addCell(new Phrase(dateRow, Style.FRONTPAGE_FONT_3));
+      applyEmbeddedFonts(title);
       title.setTotalWidth(pageSize.getWidth() - frontPageDocument.leftMargin()
           - frontPageDocument.rightMargin());
       title.writeSelectedRows(0, -1, frontPageDocument.leftMargin(),
-          pageSize.getHeight() - logoImage.getHeight() - 150,
+          pageSize.getHeight() - logoImage.getScaledHeight() - 150,
           frontPageWriter.getDirectContent());
 
     } catch (IOException e) {
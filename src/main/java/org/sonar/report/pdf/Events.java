@@ -42,12 +42,28 @@ public class Events extends PdfPageEventHelper {
   private Toc toc;
   private Header header;
 
+  // Pages before the first page of the report body
+  private int pageOffset;
+
+  private boolean pageNumbers = true;
+
   public Events(final Toc toc, final Header header) {
     this.toc = toc;
     this.header = header;
     toc.setHeader(header);
   }
 
+  public void setPageOffset(final int pageOffset) {
+    this.pageOffset = pageOffset;
+  }
+
+  /**
+   * Page numbers are only printed in the report body (not in TOC pages).
+   */
+  public void setPageNumbers(final boolean pageNumbers) {
+    this.pageNumbers = pageNumbers;
+  }
+
   @Override
   public void onChapter(final PdfWriter writer, final Document document, final float position,
       final Paragraph paragraph) {
@@ -68,7 +84,9 @@ public class Events extends PdfPageEventHelper {
   @Override
   public void onEndPage(final PdfWriter writer, final Document document) {
     header.onEndPage(writer, document);
-    printPageNumber(writer, document);
+    if (pageNumbers) {
+      printPageNumber(writer, document);
+    }
   }
 
   @Override
@@ -82,7 +100,7 @@ public class Events extends PdfPageEventHelper {
     float textBase = document.bottom() - 20;
     try {
       cb.setFontAndSize(
-          BaseFont.createFont("Helvetica", BaseFont.WINANSI, false), 12);
+          Style.getBaseFont(BaseFont.HELVETICA, BaseFont.WINANSI, false), 12);
     } catch (DocumentException e) {
       LOG.error("Can not print page number", e);
     } catch (IOException e) {
@@ -90,7 +108,7 @@ public class Events extends PdfPageEventHelper {
     }
     cb.beginText();
     cb.setTextMatrix(document.right() - 10, textBase);
-    cb.showText(String.valueOf(writer.getPageNumber()));
+    cb.showText(String.valueOf(writer.getPageNumber() - pageOffset));
     cb.endText();
     cb.saveState();
   }
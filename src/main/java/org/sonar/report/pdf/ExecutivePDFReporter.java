@@ -19,25 +19,34 @@
  */
 package org.sonar.report.pdf;
 
-import java.awt.Color;
+import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URL;
 import java.text.SimpleDateFormat;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.sonar.report.pdf.batch.PDFPostJob;
 import org.sonar.report.pdf.entity.FileInfo;
 import org.sonar.report.pdf.entity.Project;
 import org.sonar.report.pdf.entity.Rule;
 import org.sonar.report.pdf.entity.exception.ReportException;
 import org.sonar.report.pdf.util.Credentials;
 import org.sonar.report.pdf.util.MetricKeys;
+import org.sonar.report.pdf.util.ProjectDigest;
 
 import com.lowagie.text.BadElementException;
+import com.lowagie.text.Chapter;
 import com.lowagie.text.ChapterAutoNumber;
 import com.lowagie.text.Chunk;
 import com.lowagie.text.Document;
@@ -63,6 +72,11 @@ public class ExecutivePDFReporter extends PDFReporter {
   private Properties configProperties;
   private Properties langProperties;
 
+  // Cache of the rendered subproject chapters (null if disabled)
+  private ChapterFragmentCache fragmentCache;
+
+  private DashboardTemplate dashboardTemplate;
+
   public ExecutivePDFReporter(final Credentials credentials, final URL logo,
       final String projectKey, final Properties configProperties, final Properties langProperties) {
     super(credentials);
@@ -103,7 +117,7 @@ public class ExecutivePDFReporter extends PDFReporter {
         largeLogo = this.getClass().getClassLoader()
             .getResource(super.getConfigProperty("front.page.logo"));
       }
-      Image logoImage = Image.getInstance(largeLogo);
+      Image logoImage = getLogoImage(largeLogo, 360, 200);
       logoImage.scaleAbsolute(360, 200);
       Rectangle pageSize = frontPageDocument.getPageSize();
       logoImage.setAbsolutePosition(Style.FRONTPAGE_LOGO_POSITION_X,
@@ -127,6 +141,7 @@ public class ExecutivePDFReporter extends PDFReporter {
           .getMeasure(MetricKeys.PROFILE).getDataValue(),
           Style.FRONTPAGE_FONT_3));
       title.addCell(new Phrase(dateRow, Style.FRONTPAGE_FONT_3));
+      applyEmbeddedFonts(title);
       title.setTotalWidth(pageSize.getWidth() - frontPageDocument.leftMargin()
           - frontPageDocument.rightMargin());
       title.writeSelectedRows(0, -1, frontPageDocument.leftMargin(),
@@ -146,245 +161,244 @@ public class ExecutivePDFReporter extends PDFReporter {
   protected void printPdfBody(final Document document) throws DocumentException,
       IOException, ReportException {
     Project project = super.getProject();
-    // Chapter 1: Report Overview (Parent project)
-    ChapterAutoNumber chapter1 = new ChapterAutoNumber(new Paragraph(
-        project.getName(), Style.CHAPTER_FONT));
-    chapter1.add(new Paragraph(getTextProperty("main.text.misc.overview"),
-        Style.NORMAL_FONT));
-    Section section11 = chapter1.addSection(new Paragraph(
+    List<Future<ChapterFragment>> fragments = startSubprojectChapters(project);
+    try {
+      // Chapter 1: Report Overview (Parent project)
+      ChapterAutoNumber chapter1 = new ChapterAutoNumber(new Paragraph(
+          project.getName(), Style.CHAPTER_FONT));
+      chapter1.add(new Paragraph(getTextProperty("main.text.misc.overview"),
+          Style.NORMAL_FONT));
+      Section section11 = chapter1.addSection(new Paragraph(
+          getTextProperty("general.report_overview"), Style.TITLE_FONT));
+      printDashboard(project, section11);
+      flushChapter(document, chapter1);
+      Section section12 = chapter1.addSection(new Paragraph(
+          getTextProperty("general.violations_analysis"), Style.TITLE_FONT));
+      printMostViolatedRules(project, section12);
+      printMostViolatedFiles(project, section12);
+      printMostComplexFiles(project, section12);
+      printMostDuplicatedFiles(project, section12);
+      addChapter(document, chapter1);
+
+      printSubprojectChapters(document, project, fragments);
+    } finally {
+      discardSubprojectChapters(fragments);
+    }
+  }
+
+  /**
+   * Print the chapter of a subproject (module) in the given document: the
+   * report body, or a fragment.
+   */
+  protected void printSubprojectChapter(final Document document,
+      final Project subproject, final Chapter chapterN)
+      throws DocumentException, IOException, ReportException {
+    printSubprojectSections(document, subproject, chapterN);
+    addChapter(document, chapterN);
+  }
+
+  /**
+   * Sections of the chapter of a subproject (module), they are flushed to the
+   * document when chapters are streamed.
+   */
+  protected void printSubprojectSections(final Document document,
+      final Project subproject, final Chapter chapterN)
+      throws DocumentException, IOException, ReportException {
+    Section sectionN1 = chapterN.addSection(new Paragraph(
         getTextProperty("general.report_overview"), Style.TITLE_FONT));
-    printDashboard(project, section11);
-    Section section12 = chapter1.addSection(new Paragraph(
+    printDashboard(subproject, sectionN1);
+    flushChapter(document, chapterN);
+
+    Section sectionN2 = chapterN.addSection(new Paragraph(
         getTextProperty("general.violations_analysis"), Style.TITLE_FONT));
-    printMostViolatedRules(project, section12);
-    printMostViolatedFiles(project, section12);
-    printMostComplexFiles(project, section12);
-    printMostDuplicatedFiles(project, section12);
-    document.add(chapter1);
+    printMostViolatedRules(subproject, sectionN2);
+    printMostViolatedFiles(subproject, sectionN2);
+    printMostComplexFiles(subproject, sectionN2);
+    printMostDuplicatedFiles(subproject, sectionN2);
+    flushChapter(document, chapterN);
+  }
 
-    Iterator<Project> it = project.getSubprojects().iterator();
-    while (it.hasNext()) {
-      Project subproject = it.next();
-      ChapterAutoNumber chapterN = new ChapterAutoNumber(new Paragraph(
-          subproject.getName(), Style.CHAPTER_FONT));
+  /**
+   * Start rendering the subproject chapters in fragments, on a pool of
+   * threads when sonar.pdf.parallelChapters is set. Fragments are also used
+   * when sonar.pdf.chapters.cacheDir is set: chapters whose data has not
+   * changed since the last run are read from the cache instead of rendered.
+   * Chapter numbers are explicit: the parent project chapter is the first
+   * one.
+   *
+   * @return The fragments in chapters order, or null if chapters are printed
+   *         in the report document
+   */
+  protected List<Future<ChapterFragment>> startSubprojectChapters(
+      final Project project) {
+    boolean parallel = Boolean.valueOf(getConfigProperty(
+        PDFPostJob.PARALLEL_CHAPTERS,
+        String.valueOf(PDFPostJob.PARALLEL_CHAPTERS_DEFAULT_VALUE)));
+    String cacheDirectory = getConfigProperty(PDFPostJob.CHAPTERS_CACHE_DIR,
+        PDFPostJob.CHAPTERS_CACHE_DIR_DEFAULT_VALUE);
+    if ((!parallel && cacheDirectory.length() == 0)
+        || project.getSubprojects().isEmpty()) {
+      return null;
+    }
+    final boolean spill = isSpillToDisk();
+    final ChapterFragmentCache cache;
+    final String context;
+    if (cacheDirectory.length() > 0) {
+      cache = new ChapterFragmentCache(new File(cacheDirectory));
+      context = new ProjectDigest().update(getReportType(),
+          ChapterFragment.TEMPLATE_VERSION,
+          getConfigProperty(PDFPostJob.STREAMING_TABLES,
+              String.valueOf(PDFPostJob.STREAMING_TABLES_DEFAULT_VALUE)),
+          getEmbeddedFonts() != null ? getEmbeddedFonts().getSettings() : "",
+          String.valueOf(getIntermediateCompressionLevel()))
+          .update(getLangProperties()).getKey();
+    } else {
+      cache = null;
+      context = null;
+    }
+    fragmentCache = cache;
+    int threads = parallel ? Math.min(Runtime.getRuntime().availableProcessors(),
+        project.getSubprojects().size()) : 1;
+    LOG.info("Rendering " + project.getSubprojects().size()
+        + " module chapters on " + threads + " threads");
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    List<Future<ChapterFragment>> fragments = new LinkedList<Future<ChapterFragment>>();
+    int chapterNumber = 2;
+    for (final Project subproject : project.getSubprojects()) {
+      final int number = chapterNumber++;
+      fragments.add(executor.submit(new Callable<ChapterFragment>() {
+        public ChapterFragment call() throws Exception {
+          String key = null;
+          if (cache != null) {
+            key = updateChapterKey(new ProjectDigest().update(context,
+                String.valueOf(number)), subproject).getKey();
+            ChapterFragment cached = cache.get(key);
+            if (cached != null) {
+              return cached;
+            }
+          }
+          Chapter chapterN = new Chapter(new Paragraph(subproject.getName(),
+              Style.CHAPTER_FONT), number);
+          ChapterFragment fragment = new ChapterFragment(spill);
+          try {
+            printSubprojectChapter(fragment.open(createDocument(),
+                getIntermediateCompressionLevel()), subproject, chapterN);
+            fragment.close();
+          } catch (Exception e) {
+            fragment.delete();
+            throw e;
+          }
+          if (cache != null) {
+            cache.put(key, fragment);
+          }
+          return fragment;
+        }
+      }));
+    }
+    executor.shutdown();
+    return fragments;
+  }
 
-      Section sectionN1 = chapterN.addSection(new Paragraph(
-          getTextProperty("general.report_overview"), Style.TITLE_FONT));
-      printDashboard(subproject, sectionN1);
+  /**
+   * Print the subproject chapters in the report document, or append the
+   * rendered fragments in order (fragments are removed from the list once
+   * they are appended).
+   */
+  protected void printSubprojectChapters(final Document document,
+      final Project project, final List<Future<ChapterFragment>> fragments)
+      throws DocumentException, IOException, ReportException {
+    if (fragments == null) {
+      Iterator<Project> it = project.getSubprojects().iterator();
+      while (it.hasNext()) {
+        Project subproject = it.next();
+        ChapterAutoNumber chapterN = new ChapterAutoNumber(new Paragraph(
+            subproject.getName(), Style.CHAPTER_FONT));
+        printSubprojectChapter(document, subproject, chapterN);
+      }
+      return;
+    }
+    Iterator<Future<ChapterFragment>> it = fragments.iterator();
+    while (it.hasNext()) {
+      ChapterFragment fragment;
+      try {
+        fragment = it.next().get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new ReportException("Interrupted while rendering module chapters");
+      } catch (ExecutionException e) {
+        LOG.error("Can not render module chapter", e.getCause());
+        throw new ReportException("Can not render module chapter: "
+            + e.getCause().getMessage());
+      }
+      it.remove();
+      fragment.appendTo(document, getBodyWriter());
+    }
+    if (fragmentCache != null) {
+      fragmentCache.logStatistics();
+    }
+  }
 
-      Section sectionN2 = chapterN.addSection(new Paragraph(
-          getTextProperty("general.violations_analysis"), Style.TITLE_FONT));
-      printMostViolatedRules(subproject, sectionN2);
-      printMostViolatedFiles(subproject, sectionN2);
-      printMostComplexFiles(subproject, sectionN2);
-      printMostDuplicatedFiles(subproject, sectionN2);
-      document.add(chapterN);
+  /**
+   * Cancel the fragments that have not been appended and delete them.
+   */
+  protected void discardSubprojectChapters(
+      final List<Future<ChapterFragment>> fragments) {
+    if (fragments == null) {
+      return;
+    }
+    for (Future<ChapterFragment> fragment : fragments) {
+      if (!fragment.cancel(true) && !fragment.isCancelled()) {
+        try {
+          fragment.get().delete();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+          LOG.debug("Module chapter not rendered", e.getCause());
+        }
+      }
     }
+    fragments.clear();
+  }
+
+  /**
+   * Data printed in the chapter of the module, key of its cached fragment.
+   */
+  protected ProjectDigest updateChapterKey(final ProjectDigest digest,
+      final Project subproject) {
+    return digest.update(subproject, getDashboardTemplate().getMetricKeys());
   }
 
   protected void printDashboard(final Project project, final Section section)
       throws DocumentException {
+    for (PdfPTable table : getDashboardTemplate().getTables(project)) {
+      section.add(table);
+    }
+  }
+
+  /**
+   * The dashboard layout depends on the fonts of the report, it is created
+   * again for the next report.
+   */
+  @Override
+  public void getReport(final OutputStream out) throws DocumentException,
+      IOException, ReportException {
+    try {
+      super.getReport(out);
+    } finally {
+      synchronized (this) {
+        dashboardTemplate = null;
+      }
+    }
+  }
 
-    // Static Analysis
-    Paragraph staticAnalysis = new Paragraph(
-        getTextProperty("general.static_analysis"), Style.UNDERLINED_FONT);
-    PdfPTable staticAnalysisTable = new PdfPTable(3);
-    staticAnalysisTable.getDefaultCell().setBorderColor(Color.WHITE);
-
-    PdfPTable linesOfCode = new PdfPTable(1);
-    Style.noBorderTable(linesOfCode);
-    linesOfCode.addCell(new Phrase(getTextProperty("general.lines_of_code"),
-        Style.DASHBOARD_TITLE_FONT));
-    PdfPTable linesOfCodeTendency = new PdfPTable(2);
-    Style.noBorderTable(linesOfCodeTendency);
-    linesOfCodeTendency.getDefaultCell().setFixedHeight(
-        Style.TENDENCY_ICONS_HEIGHT);
-    linesOfCodeTendency.addCell(new Phrase(project.getMeasure(MetricKeys.NCLOC)
-        .getFormatValue(), Style.DASHBOARD_DATA_FONT));
-    linesOfCodeTendency.addCell(getTendencyImage(
-        project.getMeasure(MetricKeys.NCLOC).getQualitativeTendency(), project
-            .getMeasure(MetricKeys.NCLOC).getQuantitativeTendency()));
-
-    linesOfCode.addCell(linesOfCodeTendency);
-    linesOfCode.addCell(new Phrase(project.getMeasure(MetricKeys.PACKAGES)
-        .getFormatValue() + " packages", Style.DASHBOARD_DATA_FONT_2));
-    linesOfCode.addCell(new Phrase(project.getMeasure(MetricKeys.CLASSES)
-        .getFormatValue() + " classes", Style.DASHBOARD_DATA_FONT_2));
-    linesOfCode.addCell(new Phrase(project.getMeasure(MetricKeys.FUNCTIONS)
-        .getFormatValue() + " methods", Style.DASHBOARD_DATA_FONT_2));
-    linesOfCode.addCell(new Phrase(project.getMeasure(
-        MetricKeys.DUPLICATED_LINES_DENSITY).getFormatValue()
-        + " duplicated lines", Style.DASHBOARD_DATA_FONT_2));
-
-    PdfPTable comments = new PdfPTable(1);
-    Style.noBorderTable(comments);
-    comments.addCell(new Phrase(getTextProperty("general.comments"),
-        Style.DASHBOARD_TITLE_FONT));
-    PdfPTable commentsTendency = new PdfPTable(2);
-    commentsTendency.getDefaultCell().setFixedHeight(
-        Style.TENDENCY_ICONS_HEIGHT);
-    Style.noBorderTable(commentsTendency);
-    commentsTendency.addCell(new Phrase(project.getMeasure(
-        MetricKeys.COMMENT_LINES_DENSITY).getFormatValue(),
-        Style.DASHBOARD_DATA_FONT));
-    commentsTendency.addCell(getTendencyImage(
-        project.getMeasure(MetricKeys.COMMENT_LINES_DENSITY)
-            .getQualitativeTendency(),
-        project.getMeasure(MetricKeys.COMMENT_LINES_DENSITY)
-            .getQuantitativeTendency()));
-    comments.addCell(commentsTendency);
-    comments.addCell(new Phrase(project.getMeasure(MetricKeys.COMMENT_LINES)
-        .getFormatValue() + " comment lines", Style.DASHBOARD_DATA_FONT_2));
-
-    PdfPTable complexity = new PdfPTable(1);
-    Style.noBorderTable(complexity);
-    complexity.addCell(new Phrase(getTextProperty("general.complexity"),
-        Style.DASHBOARD_TITLE_FONT));
-    PdfPTable complexityTendency = new PdfPTable(2);
-    complexityTendency.getDefaultCell().setFixedHeight(
-        Style.TENDENCY_ICONS_HEIGHT);
-    Style.noBorderTable(complexityTendency);
-    complexityTendency.addCell(new Phrase(project.getMeasure(
-        MetricKeys.FUNCTION_COMPLEXITY).getFormatValue(),
-        Style.DASHBOARD_DATA_FONT));
-    complexityTendency.addCell(getTendencyImage(
-        project.getMeasure(MetricKeys.FUNCTION_COMPLEXITY)
-            .getQualitativeTendency(),
-        project.getMeasure(MetricKeys.FUNCTION_COMPLEXITY)
-            .getQuantitativeTendency()));
-    complexity.addCell(complexityTendency);
-    complexity.addCell(new Phrase(project.getMeasure(
-        MetricKeys.CLASS_COMPLEXITY).getFormatValue()
-        + " /class", Style.DASHBOARD_DATA_FONT_2));
-    complexity.addCell(new Phrase(project.getMeasure(MetricKeys.COMPLEXITY)
-        .getFormatValue() + " decision points", Style.DASHBOARD_DATA_FONT_2));
-
-    staticAnalysisTable.setSpacingBefore(10);
-    staticAnalysisTable.addCell(linesOfCode);
-    staticAnalysisTable.addCell(comments);
-    staticAnalysisTable.addCell(complexity);
-    staticAnalysisTable.setSpacingAfter(20);
-
-    // Dynamic Analysis
-    Paragraph dynamicAnalysis = new Paragraph(
-        getTextProperty("general.dynamic_analysis"), Style.UNDERLINED_FONT);
-    PdfPTable dynamicAnalysisTable = new PdfPTable(3);
-    Style.noBorderTable(dynamicAnalysisTable);
-
-    PdfPTable codeCoverage = new PdfPTable(1);
-    Style.noBorderTable(codeCoverage);
-    codeCoverage.addCell(new Phrase(getTextProperty("general.code_coverage"),
-        Style.DASHBOARD_TITLE_FONT));
-    PdfPTable codeCoverageTendency = new PdfPTable(2);
-    Style.noBorderTable(codeCoverageTendency);
-    codeCoverageTendency.getDefaultCell().setFixedHeight(
-        Style.TENDENCY_ICONS_HEIGHT);
-    codeCoverageTendency.addCell(new Phrase(project.getMeasure(
-        MetricKeys.COVERAGE).getFormatValue()
-        + " coverage", Style.DASHBOARD_DATA_FONT));
-    codeCoverageTendency.addCell(getTendencyImage(
-        project.getMeasure(MetricKeys.COVERAGE).getQualitativeTendency(),
-        project.getMeasure(MetricKeys.COVERAGE).getQuantitativeTendency()));
-    codeCoverage.addCell(codeCoverageTendency);
-    codeCoverage.addCell(new Phrase(project.getMeasure(MetricKeys.TESTS)
-        .getFormatValue() + " tests", Style.DASHBOARD_DATA_FONT_2));
-
-    PdfPTable testSuccess = new PdfPTable(1);
-    Style.noBorderTable(testSuccess);
-    testSuccess.addCell(new Phrase(getTextProperty("general.test_success"),
-        Style.DASHBOARD_TITLE_FONT));
-    PdfPTable testSuccessTendency = new PdfPTable(2);
-    Style.noBorderTable(testSuccessTendency);
-    testSuccessTendency.getDefaultCell().setFixedHeight(
-        Style.TENDENCY_ICONS_HEIGHT);
-    testSuccessTendency.addCell(new Phrase(project.getMeasure(
-        MetricKeys.TEST_SUCCESS_DENSITY).getFormatValue(),
-        Style.DASHBOARD_DATA_FONT));
-    testSuccessTendency.addCell(getTendencyImage(
-        project.getMeasure(MetricKeys.TEST_SUCCESS_DENSITY)
-            .getQualitativeTendency(),
-        project.getMeasure(MetricKeys.TEST_SUCCESS_DENSITY)
-            .getQuantitativeTendency()));
-    testSuccess.addCell(testSuccessTendency);
-    testSuccess.addCell(new Phrase(project.getMeasure(MetricKeys.TEST_FAILURES)
-        .getFormatValue() + " failures", Style.DASHBOARD_DATA_FONT_2));
-    testSuccess.addCell(new Phrase(project.getMeasure(MetricKeys.TEST_ERRORS)
-        .getFormatValue() + " errors", Style.DASHBOARD_DATA_FONT_2));
-
-    dynamicAnalysisTable.setSpacingBefore(10);
-    dynamicAnalysisTable.addCell(codeCoverage);
-    dynamicAnalysisTable.addCell(testSuccess);
-    dynamicAnalysisTable.addCell("");
-    dynamicAnalysisTable.setSpacingAfter(20);
-
-    Paragraph codingRulesViolations = new Paragraph(
-        getTextProperty("general.coding_rules_violations"),
-        Style.UNDERLINED_FONT);
-    PdfPTable codingRulesViolationsTable = new PdfPTable(3);
-    Style.noBorderTable(codingRulesViolationsTable);
-
-    PdfPTable technicalDebt = new PdfPTable(1);
-    Style.noBorderTable(technicalDebt);
-    technicalDebt
-        .addCell(new Phrase(getTextProperty("general.technical_debt"),
-            Style.DASHBOARD_TITLE_FONT));
-    PdfPTable technicalDebtTendency = new PdfPTable(2);
-    Style.noBorderTable(technicalDebtTendency);
-    technicalDebtTendency.getDefaultCell().setFixedHeight(
-        Style.TENDENCY_ICONS_HEIGHT);
-    technicalDebtTendency.addCell(new Phrase(project.getMeasure(
-        MetricKeys.TECHNICAL_DEBT).getFormatValue(),
-        Style.DASHBOARD_DATA_FONT));
-
-    // Workarround for avoid resizing
-    Image tendencyTechnicalDebtResize = getTendencyImage(
-        project.getMeasure(MetricKeys.TECHNICAL_DEBT)
-            .getQualitativeTendency(),
-        project.getMeasure(MetricKeys.TECHNICAL_DEBT)
-            .getQuantitativeTendency());
-    tendencyTechnicalDebtResize.scaleAbsolute(Style.TENDENCY_ICONS_HEIGHT,
-        Style.TENDENCY_ICONS_HEIGHT);
-    PdfPCell tendencyRulesCell = new PdfPCell(tendencyTechnicalDebtResize);
-    tendencyRulesCell.setBorder(0);
-    technicalDebtTendency.addCell(tendencyRulesCell);
-    technicalDebt.addCell(technicalDebtTendency);
-
-    PdfPTable violations = new PdfPTable(1);
-    Style.noBorderTable(violations);
-    violations.addCell(new Phrase(getTextProperty("general.violations"),
-        Style.DASHBOARD_TITLE_FONT));
-    PdfPTable violationsTendency = new PdfPTable(2);
-    Style.noBorderTable(violationsTendency);
-    violationsTendency.getDefaultCell().setFixedHeight(
-        Style.TENDENCY_ICONS_HEIGHT);
-    violationsTendency.addCell(new Phrase(project.getMeasure(
-        MetricKeys.VIOLATIONS).getFormatValue(), Style.DASHBOARD_DATA_FONT));
-
-    // Workarround for avoid resizing
-    Image tendencyResize = getTendencyImage(
-        project.getMeasure(MetricKeys.VIOLATIONS).getQualitativeTendency(),
-        project.getMeasure(MetricKeys.VIOLATIONS).getQuantitativeTendency());
-    tendencyResize.scaleAbsolute(Style.TENDENCY_ICONS_HEIGHT,
-        Style.TENDENCY_ICONS_HEIGHT);
-    PdfPCell tendencyCell = new PdfPCell(tendencyResize);
-    tendencyCell.setBorder(0);
-    violationsTendency.addCell(tendencyCell);
-
-    violations.addCell(violationsTendency);
-
-    codingRulesViolationsTable.setSpacingBefore(10);
-    codingRulesViolationsTable.addCell(technicalDebt);
-    codingRulesViolationsTable.addCell(violations);
-    codingRulesViolationsTable.addCell("");
-    codingRulesViolationsTable.setSpacingAfter(20);
-
-    section.add(Chunk.NEWLINE);
-    section.add(staticAnalysis);
-    section.add(staticAnalysisTable);
-    section.add(dynamicAnalysis);
-    section.add(dynamicAnalysisTable);
-    section.add(codingRulesViolations);
-    section.add(codingRulesViolationsTable);
+  /**
+   * Dashboard layout, shared by the project and module dashboards.
+   */
+  protected synchronized DashboardTemplate getDashboardTemplate() {
+    if (dashboardTemplate == null) {
+      dashboardTemplate = DashboardTemplate.getInstance(this, getTextWidth());
+    }
+    return dashboardTemplate;
   }
 
   protected void printMostDuplicatedFiles(final Project project, final Section section) {
@@ -18,25 +18,27 @@
  * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
  */
 package org.sonar.report.pdf;
-import java.awt.Color;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.IdentityHashMap;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.report.pdf.entity.Project;
+import org.sonar.report.pdf.util.EmbeddedFonts;
+import org.sonar.report.pdf.util.ImageOptimizer;
 
 import com.lowagie.text.BadElementException;
 import com.lowagie.text.Document;
-import com.lowagie.text.Font;
-import com.lowagie.text.FontFactory;
 import com.lowagie.text.Image;
 import com.lowagie.text.Phrase;
 import com.lowagie.text.Rectangle;
 import com.lowagie.text.pdf.PdfCell;
 import com.lowagie.text.pdf.PdfPTable;
 import com.lowagie.text.pdf.PdfPageEventHelper;
+import com.lowagie.text.pdf.PdfTemplate;
 import com.lowagie.text.pdf.PdfWriter;
 
 public class Header extends PdfPageEventHelper {
@@ -46,33 +48,46 @@ public class Header extends PdfPageEventHelper {
   private URL logo;
   private Project project;
 
+  // Logo is decoded once, the same image is used by all the documents
+  private Image logoImage;
+
+  // Header rendered once by document: <writer, header template>
+  private Map<PdfWriter, PdfTemplate> templates = new IdentityHashMap<PdfWriter, PdfTemplate>();
+
+  private ImageOptimizer optimizer;
+
+  private EmbeddedFonts embeddedFonts;
+
   public Header(final URL logo, final Project project) {
     this.logo = logo;
     this.project = project;
   }
 
+  /**
+   * Optimizer of the logo, null (default) to embed the logo as it is.
+   */
+  public void setImageOptimizer(final ImageOptimizer optimizer) {
+    this.optimizer = optimizer;
+  }
+
+  /**
+   * TrueType font of the header text, null (default) for the base-14 fonts.
+   */
+  public void setEmbeddedFonts(final EmbeddedFonts embeddedFonts) {
+    this.embeddedFonts = embeddedFonts;
+  }
+
   @Override
   public void onEndPage(final PdfWriter writer, final Document document) {
     try {
-      Image logoImage = Image.getInstance(logo);
+      PdfTemplate template = templates.get(writer);
+      if (template == null) {
+        template = createTemplate(writer, document);
+        templates.put(writer, template);
+      }
       Rectangle page = document.getPageSize();
-      PdfPTable head = new PdfPTable(4);
-      head.getDefaultCell().setVerticalAlignment(PdfCell.ALIGN_MIDDLE);
-      head.getDefaultCell().setHorizontalAlignment(PdfCell.ALIGN_CENTER);
-      head.addCell(logoImage);
-      Phrase projectName = new Phrase(project.getName(), FontFactory.getFont(
-          FontFactory.COURIER, 12, Font.NORMAL, Color.GRAY));
-      Phrase phrase = new Phrase("Sonar PDF Report", FontFactory.getFont(
-          FontFactory.COURIER, 12, Font.NORMAL, Color.GRAY));
-      head.getDefaultCell().setColspan(2);
-      head.addCell(phrase);
-      head.getDefaultCell().setColspan(1);
-      head.addCell(projectName);
-      head.setTotalWidth(page.getWidth() - document.leftMargin()
-          - document.rightMargin());
-      head.writeSelectedRows(0, -1, document.leftMargin(),
-          page.getHeight() - 20, writer.getDirectContent());
-      head.setSpacingAfter(10);
+      writer.getDirectContent().addTemplate(template, document.leftMargin(),
+          page.getHeight() - 20 - template.getHeight());
     } catch (BadElementException e) {
       LOG.error("Can not generate PDF header", e);
     } catch (MalformedURLException e) {
@@ -82,4 +97,42 @@ public class Header extends PdfPageEventHelper {
     }
   }
 
+  /**
+   * Logo, title and project name are written once in a template (form
+   * XObject) that is stamped on each page.
+   */
+  private PdfTemplate createTemplate(final PdfWriter writer,
+      final Document document) throws BadElementException,
+      MalformedURLException, IOException {
+    Rectangle page = document.getPageSize();
+    float width = page.getWidth() - document.leftMargin()
+        - document.rightMargin();
+    if (logoImage == null) {
+      if (optimizer != null) {
+        // The logo is fitted in the first cell (default padding 2)
+        logoImage = optimizer.getImage(logo, width / 4 - 4, 0);
+      } else {
+        logoImage = Image.getInstance(logo);
+      }
+    }
+    PdfPTable head = new PdfPTable(4);
+    head.getDefaultCell().setVerticalAlignment(PdfCell.ALIGN_MIDDLE);
+    head.getDefaultCell().setHorizontalAlignment(PdfCell.ALIGN_CENTER);
+    head.addCell(logoImage);
+    Phrase projectName = new Phrase(project.getName(), Style.HEADER_FONT);
+    Phrase phrase = new Phrase("Sonar PDF Report", Style.HEADER_FONT);
+    head.getDefaultCell().setColspan(2);
+    head.addCell(phrase);
+    head.getDefaultCell().setColspan(1);
+    head.addCell(projectName);
+    if (embeddedFonts != null) {
+      embeddedFonts.apply(head);
+    }
+    head.setTotalWidth(width);
+    PdfTemplate template = writer.getDirectContent().createTemplate(width,
+        head.getTotalHeight());
+    head.writeSelectedRows(0, -1, 0, head.getTotalHeight(), template);
+    return template;
+  }
+
 }
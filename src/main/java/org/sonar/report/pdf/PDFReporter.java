@@ -19,30 +19,57 @@
  */
 package org.sonar.report.pdf;
 
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.net.MalformedURLException;
+import java.io.OutputStream;
 import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.utils.HttpDownloader.HttpException;
+import org.sonar.report.pdf.batch.PDFPostJob;
 import org.sonar.report.pdf.builder.ComplexityDistributionBuilder;
+import org.sonar.report.pdf.builder.IssueSource;
 import org.sonar.report.pdf.builder.ProjectBuilder;
+import org.sonar.report.pdf.builder.ProjectDataSource;
+import org.sonar.report.pdf.builder.VectorChartBuilder;
 import org.sonar.report.pdf.entity.ComplexityDistribution;
 import org.sonar.report.pdf.entity.Project;
 import org.sonar.report.pdf.entity.exception.ReportException;
+import org.sonar.report.pdf.util.ChartCache;
 import org.sonar.report.pdf.util.Credentials;
+import org.sonar.report.pdf.util.EmbeddedFonts;
+import org.sonar.report.pdf.util.GzipHttpConnector;
+import org.sonar.report.pdf.util.ImageOptimizer;
+import org.sonar.report.pdf.util.IntermediatePdf;
+import org.sonar.report.pdf.util.Linearizer;
+import org.sonar.report.pdf.util.ParallelDeflater;
+import org.sonar.report.pdf.util.ViolationStore;
 import org.sonar.wsclient.Sonar;
 
 import com.lowagie.text.BadElementException;
+import com.lowagie.text.Chapter;
 import com.lowagie.text.Document;
 import com.lowagie.text.DocumentException;
+import com.lowagie.text.Element;
 import com.lowagie.text.Image;
 import com.lowagie.text.PageSize;
 import com.lowagie.text.pdf.PdfCopy;
+import com.lowagie.text.pdf.PdfPCell;
 import com.lowagie.text.pdf.PdfReader;
+import com.lowagie.text.pdf.PdfSmartCopy;
 import com.lowagie.text.pdf.PdfWriter;
 
 /**
@@ -57,94 +84,610 @@ public abstract class PDFReporter {
 
   private static final Logger LOG = LoggerFactory.getLogger(PDFReporter.class);
 
+  private static final int CHART_DOWNLOAD_THREADS = 4;
+
+  private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
   private Credentials credentials;
 
   private Project project = null;
 
+  private ViolationStore violationStore = null;
+
+  private ProjectDataSource dataSource = null;
+
+  private IssueSource issueSource = null;
+
+  // Writer of the report body (local charts are drawn in its templates)
+  private PdfWriter bodyWriter = null;
+
+  private ChartCache chartCache = null;
+
+  // TrueType font of the report, null when base-14 fonts are used
+  private EmbeddedFonts embeddedFonts = null;
+
+  // Deflater of the merged report, null without parallel compression
+  private ParallelDeflater parallelDeflater = null;
+
+  // Charts already in the document, each one is written once: <chart key, image>
+  private Map<String, Image> documentCharts = new HashMap<String, Image>();
+
+  // Server charts downloaded while the document is written: <chart key, image>
+  private Map<String, Future<Image>> chartDownloads = new HashMap<String, Future<Image>>();
+  private ExecutorService chartExecutor = null;
+
   public PDFReporter(final Credentials credentials) {
     this.credentials = credentials;
   }
 
   public ByteArrayOutputStream getReport() throws DocumentException,
       IOException, ReportException {
-    // Creation of documents
-    Document mainDocument = new Document(PageSize.A4, 50, 50, 110, 50);
-    Toc tocDocument = new Toc();
-    Document frontPageDocument = new Document(PageSize.A4, 50, 50, 110, 50);
-    ByteArrayOutputStream mainDocumentBaos = new ByteArrayOutputStream();
-    ByteArrayOutputStream frontPageDocumentBaos = new ByteArrayOutputStream();
-    PdfWriter mainDocumentWriter = PdfWriter.getInstance(mainDocument,
-        mainDocumentBaos);
-    PdfWriter frontPageDocumentWriter = PdfWriter.getInstance(
-        frontPageDocument, frontPageDocumentBaos);
-
-    // Events for TOC, header and pages numbers
-    Events events = new Events(tocDocument, new Header(this.getLogo(),
-        this.getProject()));
-    mainDocumentWriter.setPageEvent(events);
-
-    mainDocument.open();
-    tocDocument.getTocDocument().open();
-    frontPageDocument.open();
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    getReport(baos);
+    return baos;
+  }
+
+  /**
+   * Write the report to the given stream, so the final document is never
+   * held in memory. The stream is not closed.
+   */
+  public void getReport(final OutputStream out) throws DocumentException,
+      IOException, ReportException {
+    try {
+      if (Boolean.valueOf(getConfigProperty(PDFPostJob.LINEARIZE,
+          String.valueOf(PDFPostJob.LINEARIZE_DEFAULT_VALUE)))) {
+        buildLinearizedReport(out);
+      } else {
+        buildReport(out);
+      }
+    } finally {
+      if (chartExecutor != null) {
+        chartExecutor.shutdownNow();
+        chartExecutor = null;
+      }
+      chartDownloads.clear();
+      documentCharts.clear();
+      if (chartCache != null) {
+        chartCache.logStatistics();
+      }
+      if (violationStore != null) {
+        violationStore.close();
+        violationStore = null;
+      }
+      embeddedFonts = null;
+    }
+  }
+
+  /**
+   * The report is written to a temporary file, linearized by qpdf, then
+   * copied to the stream.
+   */
+  private void buildLinearizedReport(final OutputStream out)
+      throws DocumentException, IOException, ReportException {
+    File report = File.createTempFile("sonar-pdf-", ".pdf");
+    try {
+      OutputStream reportOut = new BufferedOutputStream(new FileOutputStream(
+          report), OUTPUT_BUFFER_SIZE);
+      try {
+        buildReport(reportOut);
+      } finally {
+        reportOut.close();
+      }
+      Linearizer.getInstance(getConfigProperty(PDFPostJob.LINEARIZE_COMMAND,
+          PDFPostJob.LINEARIZE_COMMAND_DEFAULT_VALUE)).linearize(report, out);
+    } finally {
+      if (!report.delete()) {
+        report.deleteOnExit();
+      }
+    }
+  }
+
+  private void buildReport(final OutputStream out) throws DocumentException,
+      IOException, ReportException {
+    if (!isLocalCharts()) {
+      prefetchCharts(getProject());
+    }
+    embeddedFonts = EmbeddedFonts.getInstance(getConfigProperty(
+        PDFPostJob.FONTS_EMBED, PDFPostJob.FONTS_EMBED_DEFAULT_VALUE),
+        getConfigProperty(PDFPostJob.FONTS_FILE,
+            PDFPostJob.FONTS_FILE_DEFAULT_VALUE));
+    if (Boolean.valueOf(getConfigProperty(PDFPostJob.SINGLE_PASS,
+        String.valueOf(PDFPostJob.SINGLE_PASS_DEFAULT_VALUE)))) {
+      buildSinglePassReport(out);
+    } else {
+      buildMergedReport(out);
+    }
+  }
+
+  /**
+   * Front page, body and TOC are written in one document. The TOC is written
+   * after the body (when page numbers are known) and its pages are moved
+   * after the front page when the document is closed.
+   */
+  private void buildSinglePassReport(final OutputStream out)
+      throws DocumentException, IOException, ReportException {
+    Document document = createDocument();
+    PdfWriter writer = PdfWriter.getInstance(document, out);
+    writer.setCloseStream(false);
+    writer.setLinearPageMode();
+    configureWriter(writer, true);
+    bodyWriter = writer;
+    document.open();
 
     LOG.info("Generating PDF report...");
-    printFrontPage(frontPageDocument, frontPageDocumentWriter);
-    printTocTitle(tocDocument);
-    printPdfBody(mainDocument);
-    mainDocument.close();
-    tocDocument.getTocDocument().close();
-    frontPageDocument.close();
+    printFrontPage(document, writer);
+    writer.setPageEmpty(false);
+    document.newPage();
+    int frontPages = writer.getPageNumber() - 1;
 
-    // Get Readers
-    PdfReader mainDocumentReader = new PdfReader(mainDocumentBaos.toByteArray());
-    PdfReader tocDocumentReader = new PdfReader(tocDocument
-        .getTocOutputStream().toByteArray());
-    PdfReader frontPageDocumentReader = new PdfReader(
-        frontPageDocumentBaos.toByteArray());
+    // Events for TOC, header and pages numbers (body and TOC pages)
+    Toc toc = new Toc(document, frontPages);
+    Events events = new Events(toc, createHeader());
+    events.setPageOffset(frontPages);
+    writer.setPageEvent(events);
 
-    // New document
-    Document documentWithToc = new Document(
-        tocDocumentReader.getPageSizeWithRotation(1));
-    ByteArrayOutputStream finalBaos = new ByteArrayOutputStream();
-    PdfCopy copy = new PdfCopy(documentWithToc, finalBaos);
+    printPdfBody(document);
+    document.newPage();
+    int bodyPages = writer.getPageNumber() - 1 - frontPages;
 
-    documentWithToc.open();
-    copy.addPage(copy.getImportedPage(frontPageDocumentReader, 1));
-    for (int i = 1; i <= tocDocumentReader.getNumberOfPages(); i++) {
-      copy.addPage(copy.getImportedPage(tocDocumentReader, i));
-    }
-    for (int i = 1; i <= mainDocumentReader.getNumberOfPages(); i++) {
-      copy.addPage(copy.getImportedPage(mainDocumentReader, i));
+    events.setPageNumbers(false);
+    printTocTitle(toc);
+    toc.addContent();
+    document.newPage();
+    int tocPages = writer.getPageNumber() - 1 - frontPages - bodyPages;
+
+    int[] order = new int[frontPages + tocPages + bodyPages];
+    for (int i = 0; i < order.length; i++) {
+      if (i < frontPages) {
+        order[i] = i + 1;
+      } else if (i < frontPages + tocPages) {
+        order[i] = bodyPages + i + 1;
+      } else {
+        order[i] = i - tocPages + 1;
+      }
     }
-    documentWithToc.close();
+    writer.reorderPages(order);
+    document.close();
+  }
+
+  /**
+   * Front page, TOC and body are written in three documents, then merged. The
+   * intermediate documents are spilled to temporary files when
+   * sonar.pdf.spillToDisk is set. With sonar.pdf.parallelDeflate they are
+   * written with stored (not compressed) streams, which are deflated on a pool
+   * of threads while the documents are merged. The subsets of embedded fonts
+   * are the same in the three documents, they are stored once by
+   * PdfSmartCopy.
+   */
+  private void buildMergedReport(final OutputStream out)
+      throws DocumentException, IOException, ReportException {
+    boolean spill = isSpillToDisk();
+    boolean parallelDeflate = Boolean.valueOf(getConfigProperty(
+        PDFPostJob.PARALLEL_DEFLATE,
+        String.valueOf(PDFPostJob.PARALLEL_DEFLATE_DEFAULT_VALUE)));
+    IntermediatePdf mainPdf = null;
+    IntermediatePdf tocPdf = null;
+    IntermediatePdf frontPagePdf = null;
+    try {
+      if (parallelDeflate) {
+        parallelDeflater = new ParallelDeflater(Runtime.getRuntime()
+            .availableProcessors(), getCompressionLevel());
+      }
+      mainPdf = new IntermediatePdf(spill);
+      tocPdf = new IntermediatePdf(spill);
+      frontPagePdf = new IntermediatePdf(spill);
+
+      // Creation of documents
+      Document mainDocument = createDocument();
+      Toc tocDocument = new Toc(tocPdf.getOutputStream(), createDocument());
+      Document frontPageDocument = createDocument();
+      PdfWriter mainDocumentWriter = PdfWriter.getInstance(mainDocument,
+          mainPdf.getOutputStream());
+      PdfWriter frontPageDocumentWriter = PdfWriter.getInstance(
+          frontPageDocument, frontPagePdf.getOutputStream());
+      configureWriter(mainDocumentWriter, false);
+      configureWriter(frontPageDocumentWriter, false);
+      bodyWriter = mainDocumentWriter;
+
+      // Events for TOC, header and pages numbers
+      Events events = new Events(tocDocument, createHeader());
+      mainDocumentWriter.setPageEvent(events);
+      configureWriter(tocDocument.getTocWriter(), false);
+      if (embeddedFonts != null) {
+        // After the TOC events: TOC entries are added when the body is closed
+        mainDocumentWriter.setPageEvent(embeddedFonts);
+        tocDocument.getTocWriter().setPageEvent(embeddedFonts);
+        frontPageDocumentWriter.setPageEvent(embeddedFonts);
+      }
+
+      mainDocument.open();
+      tocDocument.getTocDocument().open();
+      frontPageDocument.open();
 
-    // Return the final document (with TOC)
-    return finalBaos;
+      LOG.info("Generating PDF report...");
+      printFrontPage(frontPageDocument, frontPageDocumentWriter);
+      printTocTitle(tocDocument);
+      printPdfBody(mainDocument);
+      mainDocument.close();
+      tocDocument.getTocDocument().close();
+      frontPageDocument.close();
+
+      // Get Readers
+      PdfReader mainDocumentReader = mainPdf.getReader();
+      PdfReader tocDocumentReader = tocPdf.getReader();
+      PdfReader frontPageDocumentReader = frontPagePdf.getReader();
+
+      // New document
+      Document documentWithToc = new Document(
+          tocDocumentReader.getPageSizeWithRotation(1));
+      // Identical streams of the three documents are stored once
+      boolean smart = embeddedFonts != null
+          || Boolean.valueOf(getConfigProperty(PDFPostJob.SMART_COPY,
+              String.valueOf(PDFPostJob.SMART_COPY_DEFAULT_VALUE)));
+      PdfCopy copy;
+      if (parallelDeflater != null) {
+        copy = parallelDeflater.createCopy(documentWithToc, out, smart);
+      } else if (smart) {
+        copy = new PdfSmartCopy(documentWithToc, out);
+      } else {
+        copy = new PdfCopy(documentWithToc, out);
+      }
+      copy.setCloseStream(false);
+      configureWriter(copy, true);
+
+      documentWithToc.open();
+      addPages(copy, frontPageDocumentReader, 1);
+      addPages(copy, tocDocumentReader, tocDocumentReader.getNumberOfPages());
+      addPages(copy, mainDocumentReader, mainDocumentReader.getNumberOfPages());
+      documentWithToc.close();
+    } finally {
+      if (parallelDeflater != null) {
+        parallelDeflater.shutdown();
+        parallelDeflater = null;
+      }
+      if (mainPdf != null) {
+        mainPdf.delete();
+      }
+      if (tocPdf != null) {
+        tocPdf.delete();
+      }
+      if (frontPagePdf != null) {
+        frontPagePdf.delete();
+      }
+    }
   }
 
   public Project getProject() throws HttpException, IOException,
       ReportException {
     if (project == null) {
-      Sonar sonar = Sonar.create(credentials.getUrl(),
-          credentials.getUsername(), credentials.getPassword());
-      ProjectBuilder projectBuilder = ProjectBuilder.getInstance(credentials,
-          sonar, this);
+      GzipHttpConnector connector = new GzipHttpConnector(credentials);
+      Sonar sonar = new Sonar(connector);
+      ProjectBuilder projectBuilder;
+      if (dataSource != null) {
+        projectBuilder = ProjectBuilder.getInstance(credentials, sonar, this,
+            dataSource);
+      } else {
+        projectBuilder = ProjectBuilder.getInstance(credentials, sonar, this);
+      }
       project = projectBuilder.initializeProject(getProjectKey());
+      connector.logStatistics();
     }
     return project;
   }
 
+  /**
+   * Source of the project data, Sonar web services by default.
+   */
+  public void setDataSource(final ProjectDataSource dataSource) {
+    this.dataSource = dataSource;
+  }
+
+  /**
+   * Source of the most violated rules when the issues are available without
+   * web services (null by default).
+   */
+  public IssueSource getIssueSource() {
+    return issueSource;
+  }
+
+  public void setIssueSource(final IssueSource issueSource) {
+    this.issueSource = issueSource;
+  }
+
   public Image getCCNDistribution(final Project project) {
+    ComplexityDistribution ccnDist = getCCNDistributionData(project);
+    boolean localCharts = isLocalCharts() && bodyWriter != null;
+    String key = getChartKey(ccnDist, localCharts);
+    Image image = documentCharts.get(key);
+    if (image == null) {
+      Future<Image> download = chartDownloads.remove(key);
+      if (download != null) {
+        image = waitForChart(download);
+      } else if (localCharts) {
+        image = VectorChartBuilder.getInstance().getGraphic(ccnDist, bodyWriter);
+      } else {
+        image = ComplexityDistributionBuilder.getInstance(credentials.getUrl())
+            .getGraphic(ccnDist, getChartCache());
+      }
+      if (image == null) {
+        return null;
+      }
+      documentCharts.put(key, image);
+    }
+    // Copies share the image (or template) of the document
+    return Image.getInstance(image);
+  }
+
+  /**
+   * Start the download of the server charts of the given project and its
+   * modules, they are downloaded concurrently while the report is laid out.
+   * Reporters that print charts override this method (nothing is prefetched
+   * by default).
+   */
+  protected void prefetchCharts(final Project project) {
+  }
+
+  /**
+   * Start the download of the complexity distribution of the project and its
+   * modules (see {@link #getCCNDistribution(Project)}).
+   */
+  protected void prefetchCCNDistributions(final Project project) {
+    final ComplexityDistribution ccnDist = getCCNDistributionData(project);
+    String key = getChartKey(ccnDist, false);
+    if (!chartDownloads.containsKey(key)) {
+      if (chartExecutor == null) {
+        chartExecutor = Executors.newFixedThreadPool(CHART_DOWNLOAD_THREADS);
+      }
+      final ComplexityDistributionBuilder builder = ComplexityDistributionBuilder
+          .getInstance(credentials.getUrl());
+      final ChartCache cache = getChartCache();
+      chartDownloads.put(key, chartExecutor.submit(new Callable<Image>() {
+        public Image call() {
+          return builder.getGraphic(ccnDist, cache);
+        }
+      }));
+    }
+    for (Project subproject : project.getSubprojects()) {
+      prefetchCCNDistributions(subproject);
+    }
+  }
+
+  private Image waitForChart(final Future<Image> download) {
+    try {
+      return download.get();
+    } catch (InterruptedException e) {
+      LOG.error("Can not get complexity distribution image", e);
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      LOG.error("Can not get complexity distribution image", e);
+    }
+    return null;
+  }
+
+  private ComplexityDistribution getCCNDistributionData(final Project project) {
     String data;
     if (project.getMeasure("class_complexity_distribution").getTextValue() != null) {
       data = project.getMeasure("class_complexity_distribution").getTextValue();
     } else {
       data = "N/A";
     }
-    ComplexityDistributionBuilder complexityDistributionBuilder = ComplexityDistributionBuilder
-        .getInstance(credentials.getUrl());
-    ComplexityDistribution ccnDist = new ComplexityDistribution(data);
-    return complexityDistributionBuilder.getGraphic(ccnDist);
+    return new ComplexityDistribution(data);
+  }
+
+  private static String getChartKey(final ComplexityDistribution ccnDist,
+      final boolean localCharts) {
+    return ChartCache.getKey(localCharts ? PDFPostJob.CHARTS_LOCAL
+        : PDFPostJob.CHARTS_DEFAULT_VALUE, "cvb", "300x200",
+        ccnDist.formatXValues(), ccnDist.formatYValues());
+  }
+
+  /**
+   * Cache of downloaded charts, with a disk tier when
+   * sonar.pdf.charts.cacheDir is set.
+   */
+  protected ChartCache getChartCache() {
+    if (chartCache == null) {
+      String directory = getConfigProperty(PDFPostJob.CHARTS_CACHE_DIR,
+          PDFPostJob.CHARTS_CACHE_DIR_DEFAULT_VALUE);
+      chartCache = new ChartCache(directory.length() > 0 ? new File(directory)
+          : null);
+      if (Boolean.valueOf(getConfigProperty(PDFPostJob.IMAGES_OPTIMIZE,
+          String.valueOf(PDFPostJob.IMAGES_OPTIMIZE_DEFAULT_VALUE)))) {
+        chartCache.setImageOptimizer(createImageOptimizer(chartCache));
+      }
+    }
+    return chartCache;
+  }
+
+  /**
+   * Optimizer of the logo and server charts when sonar.pdf.images.optimize
+   * is set, null otherwise. Optimized images are kept in the charts cache.
+   */
+  protected ImageOptimizer getImageOptimizer() {
+    return getChartCache().getImageOptimizer();
+  }
+
+  private ImageOptimizer createImageOptimizer(final ChartCache cache) {
+    int dpi = PDFPostJob.IMAGES_DPI_DEFAULT_VALUE;
+    float quality = PDFPostJob.IMAGES_QUALITY_DEFAULT_VALUE;
+    try {
+      dpi = Integer.parseInt(getConfigProperty(PDFPostJob.IMAGES_DPI,
+          String.valueOf(dpi)).trim());
+      quality = Float.parseFloat(getConfigProperty(PDFPostJob.IMAGES_QUALITY,
+          String.valueOf(quality)).trim());
+    } catch (NumberFormatException e) {
+      LOG.warn("Invalid images resolution or quality, default values are used");
+    }
+    if (dpi <= 0 || quality < 0 || quality > 1) {
+      LOG.warn("Invalid images resolution or quality, default values are used");
+      dpi = PDFPostJob.IMAGES_DPI_DEFAULT_VALUE;
+      quality = PDFPostJob.IMAGES_QUALITY_DEFAULT_VALUE;
+    }
+    return ImageOptimizer.getInstance(dpi, quality, cache);
+  }
+
+  /**
+   * Logo image, optimized for the given rendered size (in points, 0 if not
+   * bounded) when sonar.pdf.images.optimize is set.
+   */
+  protected Image getLogoImage(final URL logo, final float width,
+      final float height) throws BadElementException, IOException {
+    ImageOptimizer optimizer = getImageOptimizer();
+    if (optimizer != null) {
+      return optimizer.getImage(logo, width, height);
+    }
+    return Image.getInstance(logo);
+  }
+
+  private Header createHeader() throws IOException, ReportException {
+    Header header = new Header(this.getLogo(), this.getProject());
+    header.setImageOptimizer(getImageOptimizer());
+    header.setEmbeddedFonts(embeddedFonts);
+    return header;
+  }
+
+  /**
+   * New A4 document of the report. Its text is written with the TrueType
+   * font of sonar.pdf.fonts.file when sonar.pdf.fonts.embed is set.
+   */
+  protected Document createDocument() {
+    if (embeddedFonts != null) {
+      return embeddedFonts.createDocument(PageSize.A4, 50, 50, 110, 50);
+    }
+    return new Document(PageSize.A4, 50, 50, 110, 50);
+  }
+
+  /**
+   * Width of the text of the report documents.
+   */
+  protected float getTextWidth() {
+    Document document = createDocument();
+    return document.getPageSize().getWidth() - document.leftMargin()
+        - document.rightMargin();
+  }
+
+  /**
+   * TrueType font of the report, null when base-14 fonts are used.
+   */
+  protected EmbeddedFonts getEmbeddedFonts() {
+    return embeddedFonts;
+  }
+
+  /**
+   * Replace the fonts of an element that is not added to a document of the
+   * report (i.e. a table written directly on the front page).
+   */
+  protected void applyEmbeddedFonts(final Element element) {
+    if (embeddedFonts != null) {
+      embeddedFonts.apply(element);
+    }
+  }
+
+  private void addPages(final PdfCopy copy, final PdfReader reader, final int last)
+      throws IOException, DocumentException {
+    if (parallelDeflater != null) {
+      parallelDeflater.addPages(copy, reader, last);
+      return;
+    }
+    for (int i = 1; i <= last; i++) {
+      copy.addPage(copy.getImportedPage(reader, i));
+    }
+  }
+
+  /**
+   * Deflate level (sonar.pdf.compressionLevel) of the streams written by the
+   * writer. Full compression (sonar.pdf.fullCompression) is only set on the
+   * writer of the final report: intermediate documents are read back.
+   */
+  private void configureWriter(final PdfWriter writer, final boolean output) {
+    writer.setCompressionLevel(output ? getCompressionLevel()
+        : getIntermediateCompressionLevel());
+    if (output && Boolean.valueOf(getConfigProperty(PDFPostJob.FULL_COMPRESSION,
+        String.valueOf(PDFPostJob.FULL_COMPRESSION_DEFAULT_VALUE)))) {
+      writer.setFullCompression();
+    }
+  }
+
+  /**
+   * Deflate level of the intermediate documents, module chapter fragments
+   * included (their page contents are imported as they are). With parallel
+   * compression their streams are stored, they are deflated when merged.
+   */
+  protected int getIntermediateCompressionLevel() {
+    return parallelDeflater != null ? Deflater.NO_COMPRESSION
+        : getCompressionLevel();
+  }
+
+  private int getCompressionLevel() {
+    String level = getConfigProperty(PDFPostJob.COMPRESSION_LEVEL,
+        String.valueOf(PDFPostJob.COMPRESSION_LEVEL_DEFAULT_VALUE));
+    try {
+      int value = Integer.parseInt(level.trim());
+      if (value >= Deflater.DEFAULT_COMPRESSION
+          && value <= Deflater.BEST_COMPRESSION) {
+        return value;
+      }
+    } catch (NumberFormatException e) {
+      // Default level
+    }
+    LOG.warn("Invalid compression level " + level + ", default level is used");
+    return PDFPostJob.COMPRESSION_LEVEL_DEFAULT_VALUE;
+  }
+
+  /**
+   * Writer of the report body, while the report is generated.
+   */
+  protected PdfWriter getBodyWriter() {
+    return bodyWriter;
+  }
+
+  /**
+   * Intermediate documents are written to temporary files when
+   * sonar.pdf.spillToDisk is set.
+   */
+  protected boolean isSpillToDisk() {
+    return Boolean.valueOf(getConfigProperty(PDFPostJob.SPILL_TO_DISK,
+        String.valueOf(PDFPostJob.SPILL_TO_DISK_DEFAULT_VALUE)));
+  }
+
+  /**
+   * Chapters are written to the document section by section when
+   * sonar.pdf.streamingChapters is set.
+   */
+  protected boolean isStreamingChapters() {
+    return Boolean.valueOf(getConfigProperty(PDFPostJob.STREAMING_CHAPTERS,
+        String.valueOf(PDFPostJob.STREAMING_CHAPTERS_DEFAULT_VALUE)));
+  }
+
+  /**
+   * Write the content of the chapter added so far (i.e. its finished
+   * sections) to the document and release it, when chapters are streamed.
+   * The chapter is incomplete until {@link #addChapter(Document, Chapter)}.
+   */
+  protected void flushChapter(final Document document, final Chapter chapter)
+      throws DocumentException {
+    if (isStreamingChapters()) {
+      chapter.setComplete(false);
+      document.add(chapter);
+    }
+  }
+
+  /**
+   * Add the chapter, or its content not flushed yet, to the document.
+   */
+  protected void addChapter(final Document document, final Chapter chapter)
+      throws DocumentException {
+    chapter.setComplete(true);
+    document.add(chapter);
+  }
+
+  /**
+   * Charts are drawn in the report body instead of downloaded from the
+   * server when sonar.pdf.charts is "local".
+   */
+  protected boolean isLocalCharts() {
+    return PDFPostJob.CHARTS_LOCAL.equals(getConfigProperty(PDFPostJob.CHARTS,
+        PDFPostJob.CHARTS_DEFAULT_VALUE));
   }
 
   public String getTextProperty(final String key) {
@@ -155,58 +698,41 @@ public abstract class PDFReporter {
     return getReportProperties().getProperty(key);
   }
 
+  public String getConfigProperty(final String key, final String defaultValue) {
+    return getReportProperties().getProperty(key, defaultValue);
+  }
+
+  /**
+   * Store for all the violations of the most violated rules, only available
+   * when the full issues export is enabled (null otherwise). It is deleted
+   * when the report is finished.
+   */
+  public ViolationStore getViolationStore() throws IOException {
+    if (violationStore == null
+        && Boolean.valueOf(getConfigProperty(PDFPostJob.ISSUES_FULL_EXPORT,
+            String.valueOf(PDFPostJob.ISSUES_FULL_EXPORT_DEFAULT_VALUE)))) {
+      violationStore = new ViolationStore();
+    }
+    return violationStore;
+  }
+
+  /**
+   * Copy of the preloaded tendency icon (see {@link TendencyIcons}).
+   */
   public Image getTendencyImage(final int tendencyQualitative,
       final int tendencyCuantitative) {
     // tendency parameters are t_qual and t_quant tags returned by
     // webservices api
-    String iconName;
-    if (tendencyQualitative == 0) {
-      switch (tendencyCuantitative) {
-      case -2:
-        iconName = "-2-black.png";
-        break;
-      case -1:
-        iconName = "-1-black.png";
-        break;
-      case 1:
-        iconName = "1-black.png";
-        break;
-      case 2:
-        iconName = "2-black.png";
-        break;
-      default:
-        iconName = "none.png";
-      }
-    } else {
-      switch (tendencyQualitative) {
-      case -2:
-        iconName = "-2-red.png";
-        break;
-      case -1:
-        iconName = "-1-red.png";
-        break;
-      case 1:
-        iconName = "1-green.png";
-        break;
-      case 2:
-        iconName = "2-green.png";
-        break;
-      default:
-        iconName = "none.png";
-      }
-    }
-    Image tendencyImage = null;
-    try {
-      tendencyImage = Image.getInstance(this.getClass().getResource(
-          "/tendency/" + iconName));
-    } catch (BadElementException e) {
-      LOG.error("Can not generate tendency image", e);
-    } catch (MalformedURLException e) {
-      LOG.error("Can not generate tendency image", e);
-    } catch (IOException e) {
-      LOG.error("Can not generate tendency image", e);
-    }
-    return tendencyImage;
+    return TendencyIcons.getImage(tendencyQualitative, tendencyCuantitative);
+  }
+
+  /**
+   * Dashboard cell with the preloaded tendency icon (see
+   * {@link TendencyIcons}).
+   */
+  public PdfPCell getTendencyCell(final int tendencyQualitative,
+      final int tendencyCuantitative) {
+    return TendencyIcons.getCell(tendencyQualitative, tendencyCuantitative);
   }
 
   protected abstract void printPdfBody(Document document)
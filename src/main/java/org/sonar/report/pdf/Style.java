@@ -20,15 +20,24 @@
 package org.sonar.report.pdf;
 
 import java.awt.Color;
+import java.io.IOException;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import com.lowagie.text.DocumentException;
 import com.lowagie.text.Font;
 import com.lowagie.text.Phrase;
+import com.lowagie.text.pdf.BaseFont;
 import com.lowagie.text.pdf.PdfPTable;
 
 public class Style {
 
+  // Font registry (shared by all the documents and threads): <font description, font>
+  private static final ConcurrentMap<String, BaseFont> BASE_FONTS = new ConcurrentHashMap<String, BaseFont>();
+  private static final ConcurrentMap<String, Font> FONTS = new ConcurrentHashMap<String, Font>();
+
   /**
    * Font used in main chapters title
    */
@@ -113,6 +122,23 @@ public class Style {
   public static final Font DASHBOARD_DATA_FONT_2 = new Font(Font.TIMES_ROMAN,
       10, Font.BOLD, new Color(100, 150, 190));
 
+  /**
+   * Font used in page headers
+   */
+  public static final Font HEADER_FONT = getFont(Font.COURIER, 12,
+      Font.NORMAL, Color.GRAY);
+
+  /**
+   * Fonts used in table of contents entries (chapters, sections and
+   * sub-sections)
+   */
+  public static final Font TOC_CHAPTER_FONT = getFont(Font.HELVETICA, 11,
+      Font.UNDEFINED, null);
+  public static final Font TOC_SECTION_FONT = getFont(Font.HELVETICA, 10,
+      Font.UNDEFINED, null);
+  public static final Font TOC_SUBSECTION_FONT = getFont(Font.HELVETICA, 9,
+      Font.UNDEFINED, null);
+
   /**
    * Tendency icons height + 2 (used in tables style)
    */
@@ -122,6 +148,43 @@ public class Style {
 
   public static final float FRONTPAGE_LOGO_POSITION_Y = 542;
 
+  /**
+   * Base font from the registry, it is created the first time it is
+   * requested.
+   */
+  public static BaseFont getBaseFont(final String name, final String encoding,
+      final boolean embedded) throws DocumentException, IOException {
+    String key = name + "|" + encoding + "|" + embedded;
+    BaseFont baseFont = BASE_FONTS.get(key);
+    if (baseFont == null) {
+      baseFont = BaseFont.createFont(name, encoding, embedded);
+      BaseFont previous = BASE_FONTS.putIfAbsent(key, baseFont);
+      if (previous != null) {
+        baseFont = previous;
+      }
+    }
+    return baseFont;
+  }
+
+  /**
+   * Font from the registry, it is created the first time it is requested.
+   * Fonts are shared: they must not be modified.
+   */
+  public static Font getFont(final int family, final float size,
+      final int style, final Color color) {
+    String key = family + "|" + size + "|" + style + "|"
+        + (color != null ? color.getRGB() : "");
+    Font font = FONTS.get(key);
+    if (font == null) {
+      font = new Font(family, size, style, color);
+      Font previous = FONTS.putIfAbsent(key, font);
+      if (previous != null) {
+        font = previous;
+      }
+    }
+    return font;
+  }
+
   public static void noBorderTable(final PdfPTable table) {
     table.getDefaultCell().setBorderColor(Color.WHITE);
   }
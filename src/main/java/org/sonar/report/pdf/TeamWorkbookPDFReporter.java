@@ -22,17 +22,23 @@ package org.sonar.report.pdf;
 import java.awt.Color;
 import java.io.IOException;
 import java.net.URL;
+import java.util.Collections;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.Future;
 
+import org.sonar.report.pdf.batch.PDFPostJob;
 import org.sonar.report.pdf.entity.Project;
 import org.sonar.report.pdf.entity.Rule;
 import org.sonar.report.pdf.entity.Violation;
 import org.sonar.report.pdf.entity.exception.ReportException;
 import org.sonar.report.pdf.util.Credentials;
+import org.sonar.report.pdf.util.ProjectDigest;
+import org.sonar.report.pdf.util.ViolationGroups;
+import org.sonar.report.pdf.util.ViolationGroups.FileViolations;
 
+import com.lowagie.text.Chapter;
 import com.lowagie.text.ChapterAutoNumber;
 import com.lowagie.text.Document;
 import com.lowagie.text.DocumentException;
@@ -45,6 +51,12 @@ public class TeamWorkbookPDFReporter extends ExecutivePDFReporter {
 
   private static final String REPORT_TYPE_WORKBOOK = "workbook";
 
+  // Rule, separator and File/Line rows of the detailed violations tables
+  private static final int TABLE_HEADER_ROWS = 3;
+
+  // Rows written to the document at once (sonar.pdf.streamingTables)
+  private static final int STREAMING_ROWS = 100;
+
   public TeamWorkbookPDFReporter(final Credentials credentials, final URL logo,
       final String projectKey, final Properties configProperties,
       final Properties langProperties) {
@@ -55,72 +67,113 @@ public class TeamWorkbookPDFReporter extends ExecutivePDFReporter {
   public void printPdfBody(final Document document) throws DocumentException,
       IOException, ReportException {
     Project project = super.getProject();
-    // Chapter 1: Report Overview (Parent project)
-    ChapterAutoNumber chapter1 = new ChapterAutoNumber(new Paragraph(
-        project.getName(), Style.CHAPTER_FONT));
-    chapter1.add(new Paragraph(getTextProperty("main.text.misc.overview"),
-        Style.NORMAL_FONT));
-    Section section11 = chapter1.addSection(new Paragraph(
-        getTextProperty("general.report_overview"), Style.TITLE_FONT));
-    printDashboard(project, section11);
-    Section section12 = chapter1.addSection(new Paragraph(
-        getTextProperty("general.violations_analysis"), Style.TITLE_FONT));
-    printMostViolatedRules(project, section12);
-    printMostViolatedFiles(project, section12);
-    printMostComplexFiles(project, section12);
-    printMostDuplicatedFiles(project, section12);
-
-    Section section13 = chapter1.addSection(new Paragraph(
-        getTextProperty("general.violations_details"), Style.TITLE_FONT));
-    printMostViolatedRulesDetails(project, section13);
+    List<Future<ChapterFragment>> fragments = startSubprojectChapters(project);
+    try {
+      // Chapter 1: Report Overview (Parent project)
+      ChapterAutoNumber chapter1 = new ChapterAutoNumber(new Paragraph(
+          project.getName(), Style.CHAPTER_FONT));
+      chapter1.add(new Paragraph(getTextProperty("main.text.misc.overview"),
+          Style.NORMAL_FONT));
+      Section section11 = chapter1.addSection(new Paragraph(
+          getTextProperty("general.report_overview"), Style.TITLE_FONT));
+      printDashboard(project, section11);
+      flushChapter(document, chapter1);
+      Section section12 = chapter1.addSection(new Paragraph(
+          getTextProperty("general.violations_analysis"), Style.TITLE_FONT));
+      printMostViolatedRules(project, section12);
+      printMostViolatedFiles(project, section12);
+      printMostComplexFiles(project, section12);
+      printMostDuplicatedFiles(project, section12);
+      flushChapter(document, chapter1);
 
-    document.add(chapter1);
+      Section section13 = chapter1.addSection(new Paragraph(
+          getTextProperty("general.violations_details"), Style.TITLE_FONT));
+      printMostViolatedRulesDetails(document, project, chapter1, section13);
 
-    Iterator<Project> it = project.getSubprojects().iterator();
-    while (it.hasNext()) {
-      Project subproject = it.next();
-      ChapterAutoNumber chapterN = new ChapterAutoNumber(new Paragraph(
-          subproject.getName(), Style.CHAPTER_FONT));
+      printSubprojectChapters(document, project, fragments);
+    } finally {
+      discardSubprojectChapters(fragments);
+    }
+  }
 
-      Section sectionN1 = chapterN.addSection(new Paragraph(
-          getTextProperty("general.report_overview"), Style.TITLE_FONT));
-      printDashboard(subproject, sectionN1);
+  @Override
+  protected void printSubprojectChapter(final Document document,
+      final Project subproject, final Chapter chapterN)
+      throws DocumentException, IOException, ReportException {
+    printSubprojectSections(document, subproject, chapterN);
+    Section sectionN3 = chapterN.addSection(new Paragraph(
+        getTextProperty("general.violations_details"), Style.TITLE_FONT));
+    printMostViolatedRulesDetails(document, subproject, chapterN, sectionN3);
+  }
 
-      Section sectionN2 = chapterN.addSection(new Paragraph(
-          getTextProperty("general.violations_analysis"), Style.TITLE_FONT));
-      printMostViolatedRules(subproject, sectionN2);
-      printMostViolatedFiles(subproject, sectionN2);
-      printMostComplexFiles(subproject, sectionN2);
-      printMostDuplicatedFiles(subproject, sectionN2);
-      Section sectionN3 = chapterN.addSection(new Paragraph(
-          getTextProperty("general.violations_details"), Style.TITLE_FONT));
-      printMostViolatedRulesDetails(subproject, sectionN3);
-      document.add(chapterN);
+  /**
+   * The violations details of the chapter are printed from the files and
+   * lines of the violations.
+   */
+  @Override
+  protected ProjectDigest updateChapterKey(final ProjectDigest digest,
+      final Project subproject) {
+    return super.updateChapterKey(digest, subproject).updateViolations(subproject);
+  }
+
+  /**
+   * Print the violations details (last section of the chapter) and add the
+   * chapter, or its content not flushed yet, to the document. With sonar.pdf.streamingTables the chapter is
+   * added before the details, and the tables are written to the document in
+   * chunks of rows.
+   */
+  private void printMostViolatedRulesDetails(final Document document,
+      final Project project, final Chapter chapter, final Section details)
+      throws DocumentException {
+    boolean streaming = Boolean.valueOf(getConfigProperty(
+        PDFPostJob.STREAMING_TABLES,
+        String.valueOf(PDFPostJob.STREAMING_TABLES_DEFAULT_VALUE)));
+    if (streaming) {
+      chapter.setComplete(false);
+      document.add(chapter);
+      printMostViolatedRulesDetails(project, null, document);
+    } else {
+      printMostViolatedRulesDetails(project, details, null);
     }
+    addChapter(document, chapter);
   }
 
+  /**
+   * Tables are added to the section, or written to the document when it is
+   * not null.
+   */
   private void printMostViolatedRulesDetails(final Project project,
-      final Section section13) {
+      final Section section13, final Document document)
+      throws DocumentException {
     Iterator<Rule> it = project.getMostViolatedRules().iterator();
 
     while (it.hasNext()) {
       Rule rule = it.next();
-      List<String> files = new LinkedList<String>();
-      List<String> lines = new LinkedList<String>();
-      Iterator<Violation> itViolations = rule.getTopViolations().iterator();
-      while (itViolations.hasNext()) {
-        Violation violation = itViolations.next();
-        String[] components = violation.getResource().split("/");
-        files.add(components[components.length - 1]);
-        lines.add(violation.getLine());
+      Iterable<Violation> violations = rule.getViolations();
+      Iterator<Violation> itViolations;
+      if (violations != null) {
+        itViolations = violations.iterator();
+      } else {
+        itViolations = Collections.<Violation> emptyList().iterator();
+      }
+      PdfPTable table = createViolationsDetailedTable(rule.getName(),
+          itViolations, document);
+      if (table != null) {
+        section13.add(table);
       }
-      section13
-          .add(createViolationsDetailedTable(rule.getName(), files, lines));
     }
   }
 
+  /**
+   * Violations are read once from the iterator (they can come from the full
+   * issues export on disk) and grouped by file: one row per file, with the
+   * line ranges of its violations. When the document is not null, the table is written
+   * to it every {@link #STREAMING_ROWS} rows (headers are repeated on each
+   * page) and null is returned.
+   */
   private PdfPTable createViolationsDetailedTable(final String ruleName,
-      final List<String> files, final List<String> lines) {
+      final Iterator<Violation> violations, final Document document)
+      throws DocumentException {
 
     // TODO: internationalize this
 
@@ -140,47 +193,40 @@ public class TeamWorkbookPDFReporter extends ExecutivePDFReporter {
     table.getDefaultCell().setColspan(3);
     table.addCell(new Phrase("Line", Style.NORMAL_FONT));
     table.getDefaultCell().setBackgroundColor(Color.WHITE);
-
-    int i = 0;
-    String lineNumbers = "";
-    if (files.size() > 0) {
-      while (i < files.size() - 1) {
-        if (lineNumbers.equals("")) {
-          lineNumbers += lines.get(i);
-        } else {
-          lineNumbers += ", " + lines.get(i);
-        }
-
-        if (!files.get(i).equals(files.get(i + 1))) {
-          table.getDefaultCell().setColspan(7);
-          table.addCell(files.get(i));
-          table.getDefaultCell().setColspan(3);
-          table.addCell(lineNumbers);
-          lineNumbers = "";
-        }
-        i++;
-      }
+    table.setSpacingBefore(20);
+    table.setLockedWidth(false);
+    table.setWidthPercentage(90);
+    if (document != null) {
+      table.setHeaderRows(TABLE_HEADER_ROWS);
+      table.setComplete(false);
     }
 
-    if (files.size() != 0) {
-      table.getDefaultCell().setColspan(7);
-      table.addCell(files.get(files.size() - 1));
-      table.getDefaultCell().setColspan(3);
-      if (lineNumbers.equals("")) {
-        lineNumbers += lines.get(i);
-      } else {
-        lineNumbers += ", " + lines.get(lines.size() - 1);
+    for (FileViolations file : ViolationGroups.group(violations).getFiles()) {
+      addViolationsRow(table, file.getFileName(), file.getLineRanges());
+      if (document != null
+          && table.size() - TABLE_HEADER_ROWS >= STREAMING_ROWS) {
+        document.add(table);
+        table.setSpacingBefore(0);
       }
-      table.addCell(lineNumbers);
     }
 
-    table.setSpacingBefore(20);
     table.setSpacingAfter(20);
-    table.setLockedWidth(false);
-    table.setWidthPercentage(90);
+    if (document != null) {
+      table.setComplete(true);
+      document.add(table);
+      return null;
+    }
     return table;
   }
 
+  private void addViolationsRow(final PdfPTable table, final String file,
+      final String lineNumbers) {
+    table.getDefaultCell().setColspan(7);
+    table.addCell(file);
+    table.getDefaultCell().setColspan(3);
+    table.addCell(lineNumbers);
+  }
+
   @Override
   public String getReportType() {
     return REPORT_TYPE_WORKBOOK;
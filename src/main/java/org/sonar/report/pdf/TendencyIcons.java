@@ -0,0 +1,128 @@
+/*
+ * SonarQube PDF Report
+ * Copyright (C) 2010 klicap - ingenieria del puzle
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.report.pdf;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.lowagie.text.BadElementException;
+import com.lowagie.text.Image;
+import com.lowagie.text.pdf.PdfPCell;
+
+/**
+ * Tendency icons, decoded once and scaled to the dashboard cells size. Cells
+ * get a copy of the shared icon (same image id), so each icon is written
+ * once per document whatever the number of cells that show it.
+ */
+public final class TendencyIcons {
+
+  private static final Logger LOG = LoggerFactory.getLogger(TendencyIcons.class);
+
+  private static final String[] ICON_NAMES = { "-2-black.png", "-1-black.png",
+      "1-black.png", "2-black.png", "-2-red.png", "-1-red.png", "1-red.png",
+      "2-red.png", "-2-green.png", "-1-green.png", "1-green.png",
+      "2-green.png", "none.png" };
+
+  private static final float CELL_PADDING = 2;
+
+  // Icons are read only once they are loaded: <icon name, image>
+  private static final Map<String, Image> ICONS = loadIcons();
+
+  private TendencyIcons() {
+  }
+
+  /**
+   * Cell with the tendency icon, the icon fits the cell height
+   * ({@link Style#TENDENCY_ICONS_HEIGHT}).
+   *
+   * @param tendencyQualitative
+   *          t_qual tag returned by webservices api
+   * @param tendencyQuantitative
+   *          t_quant tag returned by webservices api
+   */
+  public static PdfPCell getCell(final int tendencyQualitative,
+      final int tendencyQuantitative) {
+    PdfPCell cell;
+    Image icon = ICONS.get(getIconName(tendencyQualitative,
+        tendencyQuantitative));
+    if (icon != null) {
+      cell = new PdfPCell(icon, false);
+    } else {
+      cell = new PdfPCell();
+    }
+    cell.setBorder(0);
+    cell.setPadding(CELL_PADDING);
+    cell.setFixedHeight(Style.TENDENCY_ICONS_HEIGHT);
+    return cell;
+  }
+
+  /**
+   * Copy of the tendency icon. The copy can be scaled without changing the
+   * shared icon.
+   *
+   * @return The icon, or null if it can not be loaded
+   */
+  public static Image getImage(final int tendencyQualitative,
+      final int tendencyQuantitative) {
+    Image icon = ICONS.get(getIconName(tendencyQualitative,
+        tendencyQuantitative));
+    return icon != null ? Image.getInstance(icon) : null;
+  }
+
+  static String getIconName(final int tendencyQualitative,
+      final int tendencyQuantitative) {
+    String color;
+    int level;
+    if (tendencyQualitative == 0) {
+      color = "black";
+      level = tendencyQuantitative;
+    } else {
+      color = tendencyQualitative > 0 ? "green" : "red";
+      level = tendencyQualitative;
+    }
+    if (level < -2 || level > 2 || level == 0) {
+      return "none.png";
+    }
+    return level + "-" + color + ".png";
+  }
+
+  private static Map<String, Image> loadIcons() {
+    Map<String, Image> icons = new HashMap<String, Image>();
+    float size = Style.TENDENCY_ICONS_HEIGHT - 2 * CELL_PADDING;
+    for (String iconName : ICON_NAMES) {
+      try {
+        Image icon = Image.getInstance(TendencyIcons.class.getResource("/tendency/"
+            + iconName));
+        icon.scaleAbsolute(size, size);
+        icons.put(iconName, icon);
+      } catch (BadElementException e) {
+        LOG.error("Can not load tendency icon " + iconName, e);
+      } catch (IOException e) {
+        LOG.error("Can not load tendency icon " + iconName, e);
+      }
+    }
+    return icons;
+  }
+
+}
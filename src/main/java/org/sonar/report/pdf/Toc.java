@@ -21,13 +21,13 @@ package org.sonar.report.pdf;
 
 import java.awt.Color;
 import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.lowagie.text.Document;
 import com.lowagie.text.DocumentException;
-import com.lowagie.text.Font;
 import com.lowagie.text.PageSize;
 import com.lowagie.text.Paragraph;
 import com.lowagie.text.Phrase;
@@ -43,11 +43,49 @@ public class Toc extends PdfPageEventHelper {
 
   private Document toc;
   private ByteArrayOutputStream tocOutputStream;
+  private OutputStream out;
   private PdfPTable content;
   private PdfWriter writer;
 
+  // TOC printed in the report document itself (single-pass assembly)
+  private boolean shared;
+
+  // Pages before the first page of the report body
+  private int pageOffset;
+
   public Toc() {
-    toc = new Document(PageSize.A4, 50, 50, 110, 50);
+    this(new Document(PageSize.A4, 50, 50, 110, 50));
+  }
+
+  /**
+   * TOC document written to the given stream instead of an in-memory buffer.
+   */
+  public Toc(final OutputStream out) {
+    this();
+    this.out = out;
+  }
+
+  /**
+   * TOC written in the given (new) document, to the given stream.
+   */
+  public Toc(final OutputStream out, final Document document) {
+    this(document);
+    this.out = out;
+  }
+
+  /**
+   * TOC printed in the given document (single-pass assembly): it has no
+   * writer of its own, the content is added by {@link #addContent()} after
+   * the report body.
+   */
+  public Toc(final Document document, final int pageOffset) {
+    this(document);
+    this.shared = true;
+    this.pageOffset = pageOffset;
+  }
+
+  private Toc(final Document document) {
+    toc = document;
     content = new PdfPTable(2);
     Rectangle page = toc.getPageSize();
     content.setTotalWidth(page.getWidth() - toc.leftMargin()
@@ -67,10 +105,10 @@ public class Toc extends PdfPageEventHelper {
     content.getDefaultCell().setHorizontalAlignment(PdfCell.ALIGN_LEFT);
     content.getDefaultCell().setUseBorderPadding(true);
     content
-        .addCell(new Phrase(title.getContent(), new Font(Font.HELVETICA, 11)));
+        .addCell(new Phrase(title.getContent(), Style.TOC_CHAPTER_FONT));
     content.getDefaultCell().setHorizontalAlignment(PdfCell.ALIGN_RIGHT);
-    content.addCell(new Phrase("Page " + document.getPageNumber(), new Font(
-        Font.HELVETICA, 11)));
+    content.addCell(new Phrase("Page " + (writer.getPageNumber() - pageOffset),
+        Style.TOC_CHAPTER_FONT));
     content.getDefaultCell().setBorderColorBottom(Color.WHITE);
     content.getDefaultCell().setUseBorderPadding(false);
   }
@@ -88,15 +126,14 @@ public class Toc extends PdfPageEventHelper {
     switch (depth) {
     case 2:
       content.getDefaultCell().setIndent(10);
-      content.addCell(new Phrase(title.getContent(), new Font(Font.HELVETICA,
-          10)));
+      content.addCell(new Phrase(title.getContent(), Style.TOC_SECTION_FONT));
       content.getDefaultCell().setIndent(0);
       content.addCell("");
       break;
     default:
       content.getDefaultCell().setIndent(20);
       content.addCell(new Phrase(title.getContent(),
-          new Font(Font.HELVETICA, 9)));
+          Style.TOC_SUBSECTION_FONT));
       content.getDefaultCell().setIndent(0);
       content.addCell("");
     }
@@ -104,26 +141,47 @@ public class Toc extends PdfPageEventHelper {
 
   @Override
   public void onCloseDocument(final PdfWriter writer, final Document document) {
+    if (shared) {
+      return;
+    }
     try {
-      toc.add(content);
+      addContent();
     } catch (DocumentException e) {
       LOG.error("Can not add TOC", e);
     }
   }
 
+  public void addContent() throws DocumentException {
+    toc.add(content);
+  }
+
   public Document getTocDocument() {
     return toc;
   }
 
+  /**
+   * Writer of the TOC document (null when the TOC is printed in the report
+   * document).
+   */
+  public PdfWriter getTocWriter() {
+    return writer;
+  }
+
   public ByteArrayOutputStream getTocOutputStream() {
     return tocOutputStream;
   }
 
   public void setHeader(final Header header) {
-    tocOutputStream = new ByteArrayOutputStream();
+    if (shared) {
+      return;
+    }
+    if (out == null) {
+      tocOutputStream = new ByteArrayOutputStream();
+      out = tocOutputStream;
+    }
     writer = null;
     try {
-      writer = PdfWriter.getInstance(toc, tocOutputStream);
+      writer = PdfWriter.getInstance(toc, out);
       writer.setPageEvent(header);
     } catch (DocumentException e) {
       LOG.error("Can not add TOC", e);
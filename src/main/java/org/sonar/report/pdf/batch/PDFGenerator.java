@@ -19,20 +19,31 @@
  */
 package org.sonar.report.pdf.batch;
 
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Properties;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.sonar.api.batch.SensorContext;
+import org.sonar.api.batch.rule.ActiveRules;
+import org.sonar.api.config.Settings;
+import org.sonar.api.issue.ProjectIssues;
 import org.sonar.api.resources.Project;
+import org.sonar.api.rules.RuleFinder;
 import org.sonar.report.pdf.ExecutivePDFReporter;
 import org.sonar.report.pdf.PDFReporter;
 import org.sonar.report.pdf.TeamWorkbookPDFReporter;
 import org.sonar.report.pdf.entity.exception.ReportException;
 import org.sonar.report.pdf.util.Credentials;
+import org.sonar.report.pdf.util.GzipHttpConnector;
+import org.sonar.wsclient.Sonar;
+import org.sonar.wsclient.connectors.ConnectionException;
+import org.sonar.wsclient.services.Property;
+import org.sonar.wsclient.services.PropertyQuery;
 
 import com.lowagie.text.DocumentException;
 
@@ -40,6 +51,10 @@ public class PDFGenerator {
 
   private static final Logger LOG = LoggerFactory.getLogger(PDFGenerator.class);
 
+  private static final String REPORT_OPTIONS_PREFIX = "sonar.pdf.";
+
+  private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
   private String sonarHostUrl;
 
   private String username;
@@ -52,9 +67,30 @@ public class PDFGenerator {
 
   private Project project;
 
+  private SensorContext context;
+
+  private ProjectIssues projectIssues;
+
+  private RuleFinder ruleFinder;
+
+  private ActiveRules activeRules;
+
+  private Settings settings;
+
   public PDFGenerator(final Project project, final String sonarHostUrl, final String username, final String password,
       final String sonarBranch, final String reportType) {
+    this(project, null, sonarHostUrl, username, password, sonarBranch, reportType);
+  }
+
+  /**
+   * @param context
+   *          Batch context, project data is read from it instead of web
+   *          services (can be null)
+   */
+  public PDFGenerator(final Project project, final SensorContext context, final String sonarHostUrl,
+      final String username, final String password, final String sonarBranch, final String reportType) {
     this.project = project;
+    this.context = context;
     this.sonarHostUrl = sonarHostUrl;
     this.username = username;
     this.password = password;
@@ -62,6 +98,25 @@ public class PDFGenerator {
     this.reportType = reportType;
   }
 
+  /**
+   * Settings of the analysis, the report options (sonar.pdf.*) are read from
+   * them. Without settings the default options are used.
+   */
+  public void setSettings(final Settings settings) {
+    this.settings = settings;
+  }
+
+  /**
+   * Issues of the analysis, most violated rules are computed from them
+   * instead of web services.
+   */
+  public void setProjectIssues(final ProjectIssues projectIssues, final RuleFinder ruleFinder,
+      final ActiveRules activeRules) {
+    this.projectIssues = projectIssues;
+    this.ruleFinder = ruleFinder;
+    this.activeRules = activeRules;
+  }
+
   public void execute() {
     Properties config = new Properties();
     Properties configLang = new Properties();
@@ -77,8 +132,12 @@ public class PDFGenerator {
         config.load(this.getClass().getResourceAsStream("/report.properties"));
       }
       configLang.load(this.getClass().getResourceAsStream("/report-texts-en.properties"));
+      copyReportOptions(config);
 
       Credentials credentials = new Credentials(config.getProperty("sonar.base.url"), username, password);
+      if (sonarHostUrl != null) {
+        copyServerOptions(config, credentials);
+      }
 
       String sonarProjectId = project.getEffectiveKey();
       String path = project.getFileSystem().getSonarWorkingDirectory().getAbsolutePath() + "/"
@@ -106,11 +165,36 @@ public class PDFGenerator {
             config, configLang);
       }
 
-      ByteArrayOutputStream baos = reporter.getReport();
-      FileOutputStream fos = new FileOutputStream(new File(path));
-      baos.writeTo(fos);
-      fos.flush();
-      fos.close();
+      if (context != null) {
+        reporter.setDataSource(new SensorContextDataSource(context, project, sonarProjectId));
+      }
+      if (projectIssues != null) {
+        reporter.setIssueSource(new ProjectIssuesSource(projectIssues, ruleFinder, activeRules, project,
+            sonarProjectId));
+      }
+
+      // The report is written next to the target and renamed once complete: the
+      // post-job uploads the target if it exists, it must never be a partial file
+      File pdf = new File(path);
+      if (pdf.exists() && !pdf.delete()) {
+        throw new IOException("Can not delete previous report " + path);
+      }
+      File tmp = File.createTempFile(pdf.getName(), ".tmp", pdf.getParentFile());
+      try {
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp), OUTPUT_BUFFER_SIZE);
+        try {
+          reporter.getReport(out);
+        } finally {
+          out.close();
+        }
+        if (!tmp.renameTo(pdf)) {
+          throw new IOException("Can not rename " + tmp.getAbsolutePath() + " to " + path);
+        }
+      } finally {
+        if (tmp.exists() && !tmp.delete()) {
+          LOG.debug("Can not delete " + tmp.getAbsolutePath());
+        }
+      }
       LOG.info("PDF report generated (see " + sonarProjectId.replace(':', '-') + ".pdf on build output directory)");
     } catch (IOException e) {
       e.printStackTrace();
@@ -123,4 +207,42 @@ public class PDFGenerator {
     }
   }
 
+  /**
+   * Report options (sonar.pdf.*) are read by the reporters from the config
+   * properties. Credentials are not copied, nor the options that can only be
+   * set on the server (see {@link #copyServerOptions(Properties, Credentials)}).
+   */
+  private void copyReportOptions(final Properties config) {
+    if (settings == null) {
+      return;
+    }
+    for (String key : settings.getKeysStartingWith(REPORT_OPTIONS_PREFIX)) {
+      String value = settings.getString(key);
+      if (value != null && !PDFPostJob.USERNAME.equals(key) && !PDFPostJob.PASSWORD.equals(key)
+          && !PDFPostJob.LINEARIZE_COMMAND.equals(key)) {
+        config.put(key, value);
+      }
+    }
+  }
+
+  /**
+   * The qpdf command is run on the analysis machine: it is read from the
+   * global settings of the server, never from the project settings or the
+   * analysis properties.
+   */
+  private void copyServerOptions(final Properties config, final Credentials credentials) {
+    if (!Boolean.valueOf(config.getProperty(PDFPostJob.LINEARIZE))) {
+      return;
+    }
+    try {
+      Property command = new Sonar(new GzipHttpConnector(credentials)).find(PropertyQuery
+          .createForKey(PDFPostJob.LINEARIZE_COMMAND));
+      if (command != null && command.getValue() != null) {
+        config.put(PDFPostJob.LINEARIZE_COMMAND, command.getValue());
+      }
+    } catch (ConnectionException e) {
+      LOG.error("Can not read " + PDFPostJob.LINEARIZE_COMMAND + ", default command is used", e);
+    }
+  }
+
 }
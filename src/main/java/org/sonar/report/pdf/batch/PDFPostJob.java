@@ -27,7 +27,12 @@ import org.slf4j.LoggerFactory;
 import org.sonar.api.batch.CheckProject;
 import org.sonar.api.batch.PostJob;
 import org.sonar.api.batch.SensorContext;
+import org.sonar.api.batch.rule.ActiveRules;
+import org.sonar.api.config.Settings;
+import org.sonar.api.issue.ProjectIssues;
 import org.sonar.api.resources.Project;
+import org.sonar.api.rules.RuleFinder;
+import org.sonar.report.pdf.util.EmbeddedFonts;
 import org.sonar.report.pdf.util.FileUploader;
 
 public class PDFPostJob implements PostJob, CheckProject {
@@ -52,6 +57,86 @@ public class PDFPostJob implements PostJob, CheckProject {
   public static final String SONAR_BRANCH = "sonar.branch";
   public static final String SONAR_BRANCH_DEFAULT_VALUE = null;
 
+  public static final String ISSUES_FULL_EXPORT = "sonar.pdf.issues.fullExport";
+  public static final boolean ISSUES_FULL_EXPORT_DEFAULT_VALUE = false;
+
+  public static final String SINGLE_PASS = "sonar.pdf.singlePass";
+  public static final boolean SINGLE_PASS_DEFAULT_VALUE = false;
+
+  public static final String SPILL_TO_DISK = "sonar.pdf.spillToDisk";
+  public static final boolean SPILL_TO_DISK_DEFAULT_VALUE = false;
+
+  public static final String CHARTS = "sonar.pdf.charts";
+  public static final String CHARTS_DEFAULT_VALUE = "server";
+  public static final String CHARTS_LOCAL = "local";
+
+  public static final String CHARTS_CACHE_DIR = "sonar.pdf.charts.cacheDir";
+  public static final String CHARTS_CACHE_DIR_DEFAULT_VALUE = "";
+
+  public static final String PARALLEL_CHAPTERS = "sonar.pdf.parallelChapters";
+  public static final boolean PARALLEL_CHAPTERS_DEFAULT_VALUE = false;
+
+  public static final String CHAPTERS_CACHE_DIR = "sonar.pdf.chapters.cacheDir";
+  public static final String CHAPTERS_CACHE_DIR_DEFAULT_VALUE = "";
+
+  public static final String STREAMING_TABLES = "sonar.pdf.streamingTables";
+  public static final boolean STREAMING_TABLES_DEFAULT_VALUE = false;
+
+  public static final String STREAMING_CHAPTERS = "sonar.pdf.streamingChapters";
+  public static final boolean STREAMING_CHAPTERS_DEFAULT_VALUE = false;
+
+  public static final String FULL_COMPRESSION = "sonar.pdf.fullCompression";
+  public static final boolean FULL_COMPRESSION_DEFAULT_VALUE = false;
+
+  public static final String COMPRESSION_LEVEL = "sonar.pdf.compressionLevel";
+  public static final int COMPRESSION_LEVEL_DEFAULT_VALUE = -1;
+
+  public static final String SMART_COPY = "sonar.pdf.smartCopy";
+  public static final boolean SMART_COPY_DEFAULT_VALUE = false;
+
+  public static final String PARALLEL_DEFLATE = "sonar.pdf.parallelDeflate";
+  public static final boolean PARALLEL_DEFLATE_DEFAULT_VALUE = false;
+
+  public static final String LINEARIZE = "sonar.pdf.linearize";
+  public static final boolean LINEARIZE_DEFAULT_VALUE = false;
+
+  public static final String LINEARIZE_COMMAND = "sonar.pdf.linearize.command";
+  public static final String LINEARIZE_COMMAND_DEFAULT_VALUE = "qpdf";
+
+  public static final String IMAGES_OPTIMIZE = "sonar.pdf.images.optimize";
+  public static final boolean IMAGES_OPTIMIZE_DEFAULT_VALUE = false;
+
+  public static final String IMAGES_DPI = "sonar.pdf.images.dpi";
+  public static final int IMAGES_DPI_DEFAULT_VALUE = 150;
+
+  public static final String IMAGES_QUALITY = "sonar.pdf.images.quality";
+  public static final float IMAGES_QUALITY_DEFAULT_VALUE = 0.8f;
+
+  public static final String FONTS_EMBED = "sonar.pdf.fonts.embed";
+  public static final String FONTS_EMBED_DEFAULT_VALUE = EmbeddedFonts.NEVER;
+
+  public static final String FONTS_FILE = "sonar.pdf.fonts.file";
+  public static final String FONTS_FILE_DEFAULT_VALUE = "";
+
+  private Settings settings;
+
+  private ProjectIssues projectIssues;
+
+  private RuleFinder ruleFinder;
+
+  private ActiveRules activeRules;
+
+  public PDFPostJob() {
+  }
+
+  public PDFPostJob(final Settings settings, final ProjectIssues projectIssues,
+      final RuleFinder ruleFinder, final ActiveRules activeRules) {
+    this.settings = settings;
+    this.projectIssues = projectIssues;
+    this.ruleFinder = ruleFinder;
+    this.activeRules = activeRules;
+  }
+
   @Override
   public boolean shouldExecuteOnProject(final Project project) {
     return !project.getConfiguration().getBoolean(SKIP_PDF_KEY, SKIP_PDF_DEFAULT_VALUE);
@@ -65,8 +150,12 @@ public class PDFPostJob implements PostJob, CheckProject {
     String password = project.getConfiguration().getString(PASSWORD, PASSWORD_DEFAULT_VALUE);
     String branch = project.getConfiguration().getString(SONAR_BRANCH, SONAR_BRANCH_DEFAULT_VALUE);
     String reportType = project.getConfiguration().getString(REPORT_TYPE, REPORT_TYPE_DEFAULT_VALUE);
-    PDFGenerator generator = new PDFGenerator(project, sonarHostUrl, username, password, branch, reportType);
+    PDFGenerator generator = new PDFGenerator(project, context, sonarHostUrl, username, password, branch, reportType);
 
+    generator.setSettings(settings);
+    if (projectIssues != null) {
+      generator.setProjectIssues(projectIssues, ruleFinder, activeRules);
+    }
     generator.execute();
 
     String path = project.getFileSystem().getSonarWorkingDirectory().getAbsolutePath() + "/"
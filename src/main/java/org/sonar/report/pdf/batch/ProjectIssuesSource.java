@@ -0,0 +1,281 @@
+/*
+ * SonarQube PDF Report
+ * Copyright (C) 2010 klicap - ingenieria del puzle
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.report.pdf.batch;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.batch.rule.ActiveRule;
+import org.sonar.api.batch.rule.ActiveRules;
+import org.sonar.api.issue.Issue;
+import org.sonar.api.issue.ProjectIssues;
+import org.sonar.api.resources.Project;
+import org.sonar.api.rules.RuleFinder;
+import org.sonar.report.pdf.builder.IssueSource;
+import org.sonar.report.pdf.builder.RuleBuilder;
+import org.sonar.report.pdf.entity.Rule;
+import org.sonar.report.pdf.entity.Violation;
+import org.sonar.report.pdf.util.ViolationStore;
+
+/**
+ * Most violated rules computed from the issues of the analysis, when the
+ * report is generated by the post-job. Issues are counted by module and rule
+ * in one pass, violation locations of the selected rules of all the modules
+ * are read in a second pass.
+ */
+public class ProjectIssuesSource implements IssueSource {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ProjectIssuesSource.class);
+
+  private ProjectIssues projectIssues;
+
+  private RuleFinder ruleFinder;
+
+  private ActiveRules activeRules;
+
+  // Analysed project and modules: <module effective key, module>
+  private Map<String, Project> modules = new HashMap<String, Project>();
+
+  // Report keys (the root project key can include the branch): <module effective key, report key>
+  private Map<String, String> reportKeys = new HashMap<String, String>();
+
+  // Issues count of the project and its modules: <report key, <rule key, rule>>
+  private Map<String, Map<String, Rule>> rulesByProject = null;
+
+  // Most violated rules with their locations: <report key, <rule key, locations>>
+  private Map<String, Map<String, RuleViolations>> violationsByProject = null;
+
+  /**
+   * @param activeRules
+   *          Severities of the rules (can be null, default severities are
+   *          read from the rule finder)
+   */
+  public ProjectIssuesSource(final ProjectIssues projectIssues, final RuleFinder ruleFinder,
+      final ActiveRules activeRules, final Project rootProject, final String rootKey) {
+    this.projectIssues = projectIssues;
+    this.ruleFinder = ruleFinder;
+    this.activeRules = activeRules;
+    addModule(rootProject);
+    reportKeys.put(rootProject.getEffectiveKey(), rootKey);
+  }
+
+  private void addModule(final Project module) {
+    modules.put(module.getEffectiveKey(), module);
+    reportKeys.put(module.getEffectiveKey(), module.getEffectiveKey());
+    Iterator<Project> it = module.getModules().iterator();
+    while (it.hasNext()) {
+      addModule(it.next());
+    }
+  }
+
+  public List<Rule> getMostViolatedRules(final String projectKey, final int limit, final boolean withViolations,
+      final ViolationStore store) throws IOException {
+    if (rulesByProject == null) {
+      countIssues();
+    }
+    if (withViolations && violationsByProject == null) {
+      loadViolations(limit, store);
+    }
+    return new LinkedList<Rule>(selectRules(projectKey, limit));
+  }
+
+  /**
+   * Rules selected by severity (upper level first), then by violations count,
+   * as with the violations metrics.
+   */
+  private List<Rule> selectRules(final String projectKey, final int limit) {
+    Map<String, Rule> projectRules = rulesByProject.get(projectKey);
+    if (projectRules == null) {
+      return new ArrayList<Rule>();
+    }
+    List<Rule> rules = new ArrayList<Rule>(projectRules.values());
+    RuleBuilder.sortMostViolatedRules(rules);
+    if (rules.size() > limit) {
+      rules = new ArrayList<Rule>(rules.subList(0, limit));
+    }
+    return rules;
+  }
+
+  /**
+   * One pass on the analysis issues: each issue is counted for its module and
+   * the parent modules.
+   */
+  private void countIssues() {
+    rulesByProject = new HashMap<String, Map<String, Rule>>();
+    int count = 0;
+    Iterator<Issue> it = projectIssues.issues().iterator();
+    while (it.hasNext()) {
+      Issue issue = it.next();
+      Project module = getModule(issue.componentKey());
+      while (module != null) {
+        countIssue(reportKeys.get(module.getEffectiveKey()), issue);
+        module = getParent(module);
+      }
+      count++;
+    }
+    LOG.debug(count + " issues read from batch");
+  }
+
+  private void countIssue(final String projectKey, final Issue issue) {
+    Map<String, Rule> projectRules = rulesByProject.get(projectKey);
+    if (projectRules == null) {
+      projectRules = new HashMap<String, Rule>();
+      rulesByProject.put(projectKey, projectRules);
+    }
+    String ruleKey = issue.ruleKey().toString();
+    Rule rule = projectRules.get(ruleKey);
+    if (rule == null) {
+      rule = new Rule();
+      rule.setKey(ruleKey);
+      initRule(rule, issue);
+      rule.setMessage(issue.message());
+      rule.setViolationsNumber(Double.valueOf(0));
+      projectRules.put(ruleKey, rule);
+    }
+    rule.setViolationsNumber(rule.getViolationsNumber() + 1);
+    rule.setViolationsNumberFormatted(String.valueOf(rule.getViolationsNumber().intValue()));
+  }
+
+  /**
+   * Second pass for the selected rules of all the projects. Counts are known
+   * from the first pass, so the range of each rule is reserved in the store
+   * and each location is written to it as soon as it is read. Only the top
+   * locations of each rule are kept in memory.
+   */
+  private void loadViolations(final int limit, final ViolationStore store) throws IOException {
+    violationsByProject = new HashMap<String, Map<String, RuleViolations>>();
+    Iterator<String> itProjects = rulesByProject.keySet().iterator();
+    while (itProjects.hasNext()) {
+      String projectKey = itProjects.next();
+      Map<String, RuleViolations> projectViolations = new HashMap<String, RuleViolations>();
+      Iterator<Rule> itRules = selectRules(projectKey, limit).iterator();
+      while (itRules.hasNext()) {
+        Rule rule = itRules.next();
+        long start = store != null ? store.reserve(rule.getViolationsNumber().longValue()) : 0;
+        projectViolations.put(rule.getKey(), new RuleViolations(rule, start));
+      }
+      violationsByProject.put(projectKey, projectViolations);
+    }
+
+    Iterator<Issue> it = projectIssues.issues().iterator();
+    while (it.hasNext()) {
+      Issue issue = it.next();
+      String ruleKey = issue.ruleKey().toString();
+      Project module = getModule(issue.componentKey());
+      while (module != null) {
+        RuleViolations violations = violationsByProject.get(reportKeys.get(module.getEffectiveKey())).get(ruleKey);
+        if (violations != null) {
+          violations.add(issue, store);
+        }
+        module = getParent(module);
+      }
+    }
+
+    Iterator<Map<String, RuleViolations>> itViolations = violationsByProject.values().iterator();
+    while (itViolations.hasNext()) {
+      Iterator<RuleViolations> itRules = itViolations.next().values().iterator();
+      while (itRules.hasNext()) {
+        itRules.next().done(store);
+      }
+    }
+  }
+
+  private Project getParent(final Project module) {
+    return modules.get(module.getParent() != null ? module.getParent().getEffectiveKey() : null);
+  }
+
+  /**
+   * Module of a component: the module with the longest key that prefixes
+   * the component key.
+   */
+  private Project getModule(final String componentKey) {
+    String key = componentKey;
+    while (key != null) {
+      Project module = modules.get(key);
+      if (module != null) {
+        return module;
+      }
+      int separator = key.lastIndexOf(':');
+      key = separator > 0 ? key.substring(0, separator) : null;
+    }
+    return null;
+  }
+
+  /**
+   * Name and severity of the rule, severity of the quality profile first.
+   */
+  private void initRule(final Rule rule, final Issue issue) {
+    org.sonar.api.rules.Rule finderRule = ruleFinder != null ? ruleFinder.findByKey(issue.ruleKey()) : null;
+    rule.setName(finderRule != null && finderRule.getName() != null ? finderRule.getName() : rule.getKey());
+    ActiveRule activeRule = activeRules != null ? activeRules.find(issue.ruleKey()) : null;
+    if (activeRule != null && activeRule.severity() != null) {
+      rule.setSeverity(activeRule.severity());
+    } else if (finderRule != null && finderRule.getSeverity() != null) {
+      rule.setSeverity(finderRule.getSeverity().name());
+    } else {
+      rule.setSeverity(issue.severity());
+    }
+  }
+
+  /**
+   * Locations of a selected rule in one project.
+   */
+  private static class RuleViolations {
+
+    private static final String NO_LINE = "N/A";
+
+    private final Rule rule;
+    private final long start;
+    private long next;
+    private final List<Violation> top = new LinkedList<Violation>();
+
+    RuleViolations(final Rule rule, final long start) {
+      this.rule = rule;
+      this.start = start;
+      this.next = start;
+    }
+
+    void add(final Issue issue, final ViolationStore store) {
+      if (store != null) {
+        store.set(next, issue.componentKey(), issue.line());
+      }
+      next++;
+      if (top.size() < RuleBuilder.TOP_VIOLATIONS_LIMIT) {
+        String line = issue.line() != null ? String.valueOf(issue.line()) : NO_LINE;
+        top.add(new Violation(line, issue.componentKey(), ""));
+      }
+    }
+
+    void done(final ViolationStore store) {
+      if (store != null) {
+        rule.setViolations(store.getViolations(start, next));
+      }
+      rule.setTopViolatedResources(top);
+    }
+  }
+
+}
@@ -0,0 +1,286 @@
+/*
+ * SonarQube PDF Report
+ * Copyright (C) 2010 klicap - ingenieria del puzle
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.report.pdf.batch;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.batch.SensorContext;
+import org.sonar.api.measures.Measure;
+import org.sonar.api.measures.MeasuresFilters;
+import org.sonar.api.measures.Metric;
+import org.sonar.api.measures.RuleMeasure;
+import org.sonar.api.resources.Project;
+import org.sonar.api.resources.Resource;
+import org.sonar.api.resources.Scopes;
+import org.sonar.report.pdf.builder.FileInfoBuilder;
+import org.sonar.report.pdf.builder.ProjectDataSource;
+import org.sonar.report.pdf.entity.FileInfo;
+import org.sonar.report.pdf.entity.Measures;
+
+/**
+ * Project data read from the batch when the report is generated by the
+ * post-job: measures are already in memory, no web service call is needed.
+ * Tendencies are derived from the variations computed by the batch since the
+ * previous analysis.
+ */
+public class SensorContextDataSource implements ProjectDataSource {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SensorContextDataSource.class);
+
+  private static final int MINUTES_PER_HOUR = 60;
+  private static final int HOURS_PER_DAY = 8;
+
+  private SensorContext context;
+
+  // Analysed project and modules: <report key, resource>
+  private Map<String, Project> projects = new HashMap<String, Project>();
+
+  // Files of the last requested project (top files are requested three times by project)
+  private String filesProjectKey;
+  private List<Resource> files;
+
+  /**
+   * @param rootKey
+   *          Key of the root project in the report (can include the branch)
+   */
+  public SensorContextDataSource(final SensorContext context, final Project rootProject, final String rootKey) {
+    this.context = context;
+    addProject(rootProject);
+    projects.put(rootKey, rootProject);
+  }
+
+  private void addProject(final Project project) {
+    projects.put(project.getEffectiveKey(), project);
+    Iterator<Project> it = project.getModules().iterator();
+    while (it.hasNext()) {
+      addProject(it.next());
+    }
+  }
+
+  public boolean initProject(final org.sonar.report.pdf.entity.Project project) {
+    Project resource = projects.get(project.getKey());
+    if (resource == null) {
+      return false;
+    }
+    project.setName(resource.getName());
+    project.setDescription(resource.getDescription());
+    return true;
+  }
+
+  public Measures getMeasures(final String projectKey) {
+    Project resource = projects.get(projectKey);
+    Measures measures = new Measures();
+    Collection<?> batchMeasures = context.getMeasures(resource, MeasuresFilters.all());
+    Iterator<?> it = batchMeasures.iterator();
+    while (it.hasNext()) {
+      Measure<?> batchMeasure = (Measure<?>) it.next();
+      // Only project level measures (no rule, characteristic or developer measures)
+      if (!(batchMeasure instanceof RuleMeasure) && batchMeasure.getCharacteristic() == null
+          && batchMeasure.getPersonId() == null) {
+        measures.addMeasure(batchMeasure.getMetricKey(), initMeasure(batchMeasure));
+      }
+    }
+    try {
+      measures.setDate(resource.getAnalysisDate());
+    } catch (ParseException e) {
+      LOG.error("Can not parse date", e);
+    }
+    if (resource.getAnalysisVersion() != null) {
+      measures.setVersion(resource.getAnalysisVersion());
+    }
+    LOG.debug(measures.getMeasuresCount() + " measures read from batch for " + projectKey);
+    return measures;
+  }
+
+  public List<FileInfo> getTopFiles(final String projectKey, final int content, final int limit) {
+    String metricKey = FileInfoBuilder.getMetricKey(content);
+    List<Resource> sortedFiles = new ArrayList<Resource>();
+    final Map<Resource, Measure<?>> values = new HashMap<Resource, Measure<?>>();
+    Iterator<Resource> it = getFiles(projectKey).iterator();
+    while (it.hasNext()) {
+      Resource file = it.next();
+      Measure<?> measure = context.getMeasures(file, MeasuresFilters.metric(metricKey));
+      if (measure != null && measure.getValue() != null && measure.getValue() > 0) {
+        sortedFiles.add(file);
+        values.put(file, measure);
+      }
+    }
+    Collections.sort(sortedFiles, new Comparator<Resource>() {
+      public int compare(final Resource file1, final Resource file2) {
+        return values.get(file2).getValue().compareTo(values.get(file1).getValue());
+      }
+    });
+
+    List<FileInfo> fileInfoList = new ArrayList<FileInfo>();
+    Iterator<Resource> itSorted = sortedFiles.iterator();
+    while (itSorted.hasNext() && fileInfoList.size() < limit) {
+      Resource file = itSorted.next();
+      FileInfo fileInfo = new FileInfo();
+      fileInfo.setKey(file.getEffectiveKey());
+      fileInfo.setName(file.getName());
+      String value = formatValue(values.get(file));
+      if (content == FileInfo.VIOLATIONS_CONTENT) {
+        fileInfo.setViolations(value);
+      } else if (content == FileInfo.CCN_CONTENT) {
+        fileInfo.setComplexity(value);
+      } else if (content == FileInfo.DUPLICATIONS_CONTENT) {
+        fileInfo.setDuplicatedLines(value);
+      }
+      fileInfoList.add(fileInfo);
+    }
+    return fileInfoList;
+  }
+
+  public List<String> getModuleKeys(final String projectKey) {
+    List<String> moduleKeys = new ArrayList<String>();
+    Iterator<Project> it = projects.get(projectKey).getModules().iterator();
+    while (it.hasNext()) {
+      moduleKeys.add(it.next().getEffectiveKey());
+    }
+    return moduleKeys;
+  }
+
+  /**
+   * All files of the project and its modules (as depth=-1 in web services).
+   */
+  private List<Resource> getFiles(final String projectKey) {
+    if (!projectKey.equals(filesProjectKey)) {
+      files = new ArrayList<Resource>();
+      addFiles(projects.get(projectKey), files);
+      filesProjectKey = projectKey;
+    }
+    return files;
+  }
+
+  private void addFiles(final Resource resource, final List<Resource> fileList) {
+    Collection<Resource> children = context.getChildren(resource);
+    if (children != null) {
+      Iterator<Resource> it = children.iterator();
+      while (it.hasNext()) {
+        Resource child = it.next();
+        if (Scopes.FILE.equals(child.getScope())) {
+          fileList.add(child);
+        } else {
+          addFiles(child, fileList);
+        }
+      }
+    }
+  }
+
+  private static org.sonar.report.pdf.entity.Measure initMeasure(final Measure<?> batchMeasure) {
+    org.sonar.report.pdf.entity.Measure measure = new org.sonar.report.pdf.entity.Measure();
+    measure.setKey(batchMeasure.getMetricKey());
+    measure.setFormatValue(formatValue(batchMeasure));
+    int tendency = getTendency(batchMeasure);
+    measure.setQuantitativeTendency(tendency);
+    measure.setQualitativeTendency(tendency * getDirection(batchMeasure.getMetric()));
+    Double value = batchMeasure.getValue();
+    String data = batchMeasure.getData();
+    if (value != null) {
+      measure.setValue(String.valueOf(value));
+      measure.setTextValue(String.valueOf(value));
+    } else if (data != null) {
+      measure.setTextValue(data);
+    } else {
+      measure.setTextValue("");
+    }
+    measure.setDataValue(data != null ? data : "");
+    return measure;
+  }
+
+  /**
+   * Tendency computed by the batch or, if there is none, sign of the variation
+   * since the previous analysis (first differential period): 1 when the value
+   * increases, -1 when it decreases.
+   */
+  private static int getTendency(final Measure<?> batchMeasure) {
+    if (batchMeasure.getTendency() != null) {
+      return batchMeasure.getTendency();
+    }
+    Double variation = batchMeasure.getVariation1();
+    if (variation == null || variation == 0) {
+      return 0;
+    }
+    return variation > 0 ? 1 : -1;
+  }
+
+  /**
+   * As the server trend: increase is good (1) or bad (-1) for qualitative
+   * metrics only.
+   */
+  private static int getDirection(final Metric<?> metric) {
+    if (metric == null || !Boolean.TRUE.equals(metric.getQualitative()) || metric.getDirection() == null) {
+      return 0;
+    }
+    return Integer.signum(metric.getDirection());
+  }
+
+  /**
+   * Same format as the values formatted by the server.
+   */
+  private static String formatValue(final Measure<?> batchMeasure) {
+    Double value = batchMeasure.getValue();
+    Metric<?> metric = batchMeasure.getMetric();
+    if (value == null || metric == null || metric.getType() == null) {
+      return batchMeasure.getData() != null ? batchMeasure.getData() : "";
+    }
+    DecimalFormatSymbols symbols = new DecimalFormatSymbols(Locale.ENGLISH);
+    switch (metric.getType()) {
+    case INT:
+      return new DecimalFormat("#,##0", symbols).format(value);
+    case FLOAT:
+      return new DecimalFormat("#,##0.0", symbols).format(value);
+    case PERCENT:
+      return new DecimalFormat("0.0", symbols).format(value) + "%";
+    case MILLISEC:
+      return new DecimalFormat("#,##0", symbols).format(value) + " ms";
+    case WORK_DUR:
+      return formatDuration(value.longValue());
+    default:
+      return batchMeasure.getData() != null ? batchMeasure.getData() : String.valueOf(value);
+    }
+  }
+
+  private static String formatDuration(final long minutes) {
+    long days = minutes / (HOURS_PER_DAY * MINUTES_PER_HOUR);
+    long hours = (minutes % (HOURS_PER_DAY * MINUTES_PER_HOUR)) / MINUTES_PER_HOUR;
+    long remainingMinutes = minutes % MINUTES_PER_HOUR;
+    if (days > 0) {
+      return hours > 0 ? days + "d " + hours + "h" : days + "d";
+    } else if (hours > 0) {
+      return remainingMinutes > 0 ? hours + "h " + remainingMinutes + "min" : hours + "h";
+    }
+    return remainingMinutes + "min";
+  }
+
+}
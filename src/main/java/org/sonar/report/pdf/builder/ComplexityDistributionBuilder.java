@@ -25,6 +25,7 @@ import java.net.MalformedURLException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.report.pdf.entity.ComplexityDistribution;
+import org.sonar.report.pdf.util.ChartCache;
 
 import com.lowagie.text.BadElementException;
 import com.lowagie.text.Image;
@@ -50,16 +51,26 @@ public class ComplexityDistributionBuilder {
   }
 
   public Image getGraphic(final ComplexityDistribution complexityDistribution) {
+    return getGraphic(complexityDistribution, null);
+  }
+
+  /**
+   * @param cache
+   *          Cache of downloaded charts, null to download the chart
+   */
+  public Image getGraphic(final ComplexityDistribution complexityDistribution,
+      final ChartCache cache) {
     Image image = null;
     try {
       if (complexityDistribution.getyValues().length != 0) {
-        image = Image
-            .getInstance(sonarBaseUrl
-                + "/chart?cht=cvb&chdi=300x200&chca="
-                + complexityDistribution.formatXValues()
-                + "&chov=y&chrav=y&chv="
-                + complexityDistribution.formatYValues()
-                + "&chorgv=y&chcaaml=0.05&chseamu=0.2&chins=5&chcaamu=0.05&chcav=y&chc=777777,777777,777777,777777,777777,777777,777777");
+        String requestUrl = sonarBaseUrl
+            + "/chart?cht=cvb&chdi=300x200&chca="
+            + complexityDistribution.formatXValues()
+            + "&chov=y&chrav=y&chv="
+            + complexityDistribution.formatYValues()
+            + "&chorgv=y&chcaaml=0.05&chseamu=0.2&chins=5&chcaamu=0.05&chcav=y&chc=777777,777777,777777,777777,777777,777777,777777";
+        image = cache != null ? Image.getInstance(cache.download(requestUrl))
+            : Image.getInstance(requestUrl);
         image.setAlignment(Image.ALIGN_MIDDLE);
       }
     } catch (BadElementException e) {
@@ -74,4 +74,17 @@ public class FileInfoBuilder {
     }
   }
 
+  /**
+   * Metric that gives the value of the given content.
+   */
+  public static String getMetricKey(final int content) {
+    if (content == FileInfo.VIOLATIONS_CONTENT) {
+      return MetricKeys.VIOLATIONS;
+    } else if (content == FileInfo.CCN_CONTENT) {
+      return MetricKeys.COMPLEXITY;
+    } else {
+      return MetricKeys.DUPLICATED_LINES;
+    }
+  }
+
 }
@@ -0,0 +1,255 @@
+/*
+ * SonarQube PDF Report
+ * Copyright (C) 2010 klicap - ingenieria del puzle
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.report.pdf.builder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.report.pdf.entity.Priority;
+import org.sonar.report.pdf.entity.Rule;
+import org.sonar.report.pdf.util.GzipHttpConnector;
+import org.sonar.wsclient.jsonsimple.JSONValue;
+
+/**
+ * Most violated rules from the facets of the issues search web service: one
+ * request per project (or module) gives the issues count of every rule and of
+ * every severity. Names and severities of the rules are read in one rules
+ * search request.
+ */
+public class IssueFacetsBuilder {
+
+  private static final Logger LOG = LoggerFactory.getLogger(IssueFacetsBuilder.class);
+
+  private static final String ISSUES_SEARCH_PATH = "/api/issues/search";
+  private static final String RULES_SEARCH_PATH = "/api/rules/search";
+  private static final String RULES_SHOW_PATH = "/api/rules/show";
+  private static final String RULES_FACET = "rules";
+  private static final String SEVERITIES_FACET = "severities";
+
+  private static IssueFacetsBuilder builder;
+
+  private GzipHttpConnector connector;
+
+  // Rules already requested (same rules are violated in many modules): <rule key, rule node>
+  private Map<String, Map<?, ?>> rulesCache = new HashMap<String, Map<?, ?>>();
+
+  public IssueFacetsBuilder(final GzipHttpConnector connector) {
+    this.connector = connector;
+  }
+
+  public static IssueFacetsBuilder getInstance(final GzipHttpConnector connector) {
+    if (builder == null) {
+      return new IssueFacetsBuilder(connector);
+    }
+
+    return builder;
+  }
+
+  /**
+   * Get the most violated rules of a project from the rules and severities
+   * facets. As with the violations metrics, rules are selected by severity
+   * (upper level first), then by issues count.
+   *
+   * @return The rules, or null if the server does not provide issues facets
+   */
+  public List<Rule> getMostViolatedRules(final String projectKey, final int limit) {
+    LOG.debug("Accessing Sonar: getting rules and severities facets for " + projectKey);
+    Map<?, ?> root = searchFacets(projectKey, null, RULES_FACET + "," + SEVERITIES_FACET);
+    if (root == null) {
+      return null;
+    }
+    Map<String, Long> ruleCounts = getFacetCounts(root, RULES_FACET);
+    Map<String, Long> severityCounts = getFacetCounts(root, SEVERITIES_FACET);
+    if (ruleCounts == null) {
+      return null;
+    }
+    loadRuleNodes(ruleCounts.keySet());
+
+    List<Rule> rules = new ArrayList<Rule>();
+    String[] priorities = Priority.getPrioritiesArray();
+    // Reverse iteration to get violations with upper level first
+    for (int i = priorities.length - 1; i >= 0 && rules.size() < limit; i--) {
+      List<Rule> levelRules = getRules(ruleCounts, priorities[i]);
+      Long severityCount = severityCounts != null ? severityCounts.get(priorities[i]) : null;
+      if (severityCount != null && levelRules.size() < limit - rules.size()
+          && countViolations(levelRules) < severityCount) {
+        // Rules facet is truncated: rules of this level are requested alone
+        Map<?, ?> levelRoot = searchFacets(projectKey, priorities[i], RULES_FACET);
+        Map<String, Long> levelCounts = levelRoot != null ? getFacetCounts(levelRoot, RULES_FACET) : null;
+        if (levelCounts != null) {
+          loadRuleNodes(levelCounts.keySet());
+          levelRules = getRules(levelCounts, priorities[i]);
+        }
+      }
+      RuleBuilder.sortMostViolatedRules(levelRules);
+      Iterator<Rule> it = levelRules.iterator();
+      while (it.hasNext() && rules.size() < limit) {
+        rules.add(it.next());
+      }
+    }
+    LOG.debug("\t " + rules.size() + " violated rules from facets");
+    return new LinkedList<Rule>(rules);
+  }
+
+  private Map<?, ?> searchFacets(final String projectKey, final String severity,
+      final String facets) {
+    Map<String, Object> params = new HashMap<String, Object>();
+    params.put("componentRoots", projectKey);
+    params.put("resolved", "false");
+    params.put("facets", facets);
+    if (severity != null) {
+      params.put("severities", severity);
+    }
+    // Only facets are needed. Some servers read a page size of 0 as the maximum
+    params.put("ps", "1");
+    String json = connector.get(ISSUES_SEARCH_PATH, params);
+    if (json == null) {
+      return null;
+    }
+    return (Map<?, ?>) JSONValue.parse(json);
+  }
+
+  /**
+   * Violated rules of the given severity.
+   */
+  private List<Rule> getRules(final Map<String, Long> ruleCounts, final String severity) {
+    List<Rule> rules = new ArrayList<Rule>();
+    for (Map.Entry<String, Long> ruleCount : ruleCounts.entrySet()) {
+      if (ruleCount.getValue() > 0) {
+        Rule rule = initRule(ruleCount.getKey(), ruleCount.getValue());
+        if (severity.equals(rule.getSeverity())) {
+          rules.add(rule);
+        }
+      }
+    }
+    return rules;
+  }
+
+  private static long countViolations(final List<Rule> rules) {
+    long count = 0;
+    for (Rule rule : rules) {
+      count += rule.getViolationsNumber().longValue();
+    }
+    return count;
+  }
+
+  private Rule initRule(final String ruleKey, final long count) {
+    Rule rule = new Rule();
+    rule.setKey(ruleKey);
+    rule.setViolationsNumber(Double.valueOf(count));
+    rule.setViolationsNumberFormatted(String.valueOf(count));
+    Map<?, ?> ruleNode = getRuleNode(ruleKey);
+    if (ruleNode != null) {
+      rule.setName((String) ruleNode.get("name"));
+      rule.setSeverity((String) ruleNode.get("severity"));
+    } else {
+      rule.setName(ruleKey);
+    }
+    return rule;
+  }
+
+  /**
+   * Rules not requested yet are read in one rules search request.
+   */
+  private void loadRuleNodes(final Collection<String> ruleKeys) {
+    StringBuilder keys = new StringBuilder();
+    int count = 0;
+    for (String ruleKey : ruleKeys) {
+      if (!rulesCache.containsKey(ruleKey)) {
+        if (keys.length() > 0) {
+          keys.append(',');
+        }
+        keys.append(ruleKey);
+        count++;
+      }
+    }
+    if (count == 0) {
+      return;
+    }
+    Map<String, Object> params = new HashMap<String, Object>();
+    params.put("rule_key", keys.toString());
+    params.put("f", "name,severity");
+    params.put("ps", String.valueOf(count));
+    String json = connector.get(RULES_SEARCH_PATH, params);
+    if (json != null) {
+      List<?> ruleNodes = (List<?>) ((Map<?, ?>) JSONValue.parse(json)).get("rules");
+      if (ruleNodes != null) {
+        Iterator<?> it = ruleNodes.iterator();
+        while (it.hasNext()) {
+          Map<?, ?> ruleNode = (Map<?, ?>) it.next();
+          rulesCache.put((String) ruleNode.get("key"), ruleNode);
+        }
+      }
+    }
+  }
+
+  /**
+   * Rule read by the rules search, or requested alone if it was not found.
+   */
+  private Map<?, ?> getRuleNode(final String ruleKey) {
+    if (!rulesCache.containsKey(ruleKey)) {
+      Map<String, Object> params = new HashMap<String, Object>();
+      params.put("key", ruleKey);
+      String json = connector.get(RULES_SHOW_PATH, params);
+      Map<?, ?> ruleNode = null;
+      if (json != null) {
+        ruleNode = (Map<?, ?>) ((Map<?, ?>) JSONValue.parse(json)).get("rule");
+      } else {
+        LOG.debug("Rule " + ruleKey + " not found");
+      }
+      rulesCache.put(ruleKey, ruleNode);
+    }
+    return rulesCache.get(ruleKey);
+  }
+
+  /**
+   * Counts of the facet values, in the order of the facet.
+   *
+   * @return null if the facet is not in the response
+   */
+  private static Map<String, Long> getFacetCounts(final Map<?, ?> root, final String property) {
+    List<?> facets = (List<?>) root.get("facets");
+    if (facets != null) {
+      Iterator<?> it = facets.iterator();
+      while (it.hasNext()) {
+        Map<?, ?> facet = (Map<?, ?>) it.next();
+        if (property.equals(facet.get("property"))) {
+          Map<String, Long> counts = new LinkedHashMap<String, Long>();
+          Iterator<?> values = ((List<?>) facet.get("values")).iterator();
+          while (values.hasNext()) {
+            Map<?, ?> value = (Map<?, ?>) values.next();
+            counts.put((String) value.get("val"), ((Number) value.get("count")).longValue());
+          }
+          return counts;
+        }
+      }
+    }
+    return null;
+  }
+
+}
@@ -0,0 +1,47 @@
+/*
+ * SonarQube PDF Report
+ * Copyright (C) 2010 klicap - ingenieria del puzle
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.report.pdf.builder;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.sonar.report.pdf.entity.Rule;
+import org.sonar.report.pdf.util.ViolationStore;
+
+/**
+ * Where ProjectBuilder reads the most violated rules from when the issues
+ * are available without web services (i.e. the batch issues).
+ */
+public interface IssueSource {
+
+  /**
+   * Most violated rules of the project (and its modules), sorted by severity
+   * and violations count.
+   *
+   * @param withViolations
+   *          Load the violation locations of the rules too
+   * @param store
+   *          If not null, all the violation locations are written to it
+   *          (full issues export), else only the top ones are kept
+   */
+  List<Rule> getMostViolatedRules(String projectKey, int limit, boolean withViolations, ViolationStore store)
+      throws IOException;
+
+}
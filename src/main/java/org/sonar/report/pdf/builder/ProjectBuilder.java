@@ -37,8 +37,9 @@ import org.sonar.report.pdf.entity.Project;
 import org.sonar.report.pdf.entity.Rule;
 import org.sonar.report.pdf.entity.exception.ReportException;
 import org.sonar.report.pdf.util.Credentials;
-import org.sonar.report.pdf.util.MetricKeys;
+import org.sonar.report.pdf.util.GzipHttpConnector;
 import org.sonar.report.pdf.util.UrlPath;
+import org.sonar.report.pdf.util.ViolationStore;
 import org.sonar.wsclient.Sonar;
 import org.sonar.wsclient.services.Resource;
 import org.sonar.wsclient.services.ResourceQuery;
@@ -55,11 +56,21 @@ public class ProjectBuilder {
 
   private PDFReporter pdfRefporter;
 
+  private IssueFacetsBuilder issueFacetsBuilder;
+
+  private ProjectDataSource dataSource;
+
   public ProjectBuilder(final Credentials credentials, final Sonar sonar,
-      final PDFReporter pdfRefporter) {
+      final PDFReporter pdfRefporter, final ProjectDataSource dataSource) {
     this.credentials = credentials;
     this.sonar = sonar;
     this.pdfRefporter = pdfRefporter;
+    this.dataSource = dataSource;
+  }
+
+  public ProjectBuilder(final Credentials credentials, final Sonar sonar,
+      final PDFReporter pdfRefporter) {
+    this(credentials, sonar, pdfRefporter, new WebServiceDataSource(sonar));
   }
 
   public static ProjectBuilder getInstance(final Credentials credentials,
@@ -71,6 +82,16 @@ public class ProjectBuilder {
     return builder;
   }
 
+  public static ProjectBuilder getInstance(final Credentials credentials,
+      final Sonar sonar, final PDFReporter pdfRefporter,
+      final ProjectDataSource dataSource) {
+    if (builder == null) {
+      return new ProjectBuilder(credentials, sonar, pdfRefporter, dataSource);
+    }
+
+    return builder;
+  }
+
   /**
    * Initialize: - Project basic data - Project measures - Project categories
    * violations - Project most violated rules - Project most violated files -
@@ -88,36 +109,23 @@ public class ProjectBuilder {
 
     LOG.info("Retrieving project info for " + project.getKey());
 
-    ResourceQuery rq = ResourceQuery.create(project.getKey());
-    rq.setDepth(0);
-    Resource resource = sonar.find(rq);
-
-    if (resource != null) {
-      initFromNode(project, resource);
+    if (dataSource.initProject(project)) {
+      initFromNode(project);
       initMeasures(project);
       initMostViolatedRules(project);
       initMostViolatedFiles(project);
       initMostComplexElements(project);
       initMostDuplicatedFiles(project);
-      LOG.debug("Accessing Sonar: getting child projects");
 
-      ResourceQuery resourceQueryChild = ResourceQuery.create(project.getKey());
-      resourceQueryChild.setDepth(1);
-      List<Resource> childNodes = sonar.findAll(resourceQueryChild);
-
-      Iterator<Resource> it = childNodes.iterator();
+      List<String> moduleKeys = dataSource.getModuleKeys(project.getKey());
+      Iterator<String> it = moduleKeys.iterator();
       project.setSubprojects(new ArrayList<Project>(0));
       if (!it.hasNext()) {
         LOG.debug(project.getKey() + " project has no childs");
       }
       while (it.hasNext()) {
-        Resource childNode = it.next();
-
-        String scope = childNode.getScope();
-        if (scope.equals("PRJ")) {
-          Project childProject = initializeProject(childNode.getKey());
-          project.getSubprojects().add(childProject);
-        }
+        Project childProject = initializeProject(it.next());
+        project.getSubprojects().add(childProject);
       }
     } else {
       LOG
@@ -132,9 +140,7 @@ public class ProjectBuilder {
   /**
    * Initialize project object and his childs (except categories violations).
    */
-  private void initFromNode(final Project project, final Resource resourceNode) {
-    project.setName(resourceNode.getName());
-    project.setDescription(resourceNode.getDescription());
+  private void initFromNode(final Project project) {
     project.setLinks(new LinkedList<String>());
     project.setSubprojects(new LinkedList<Project>());
     project.setMostViolatedRules(new LinkedList<Rule>());
@@ -145,20 +151,28 @@ public class ProjectBuilder {
 
   private void initMeasures(final Project project) throws IOException {
     LOG.info("    Retrieving measures");
-    MeasuresBuilder measuresBuilder = MeasuresBuilder.getInstance(sonar);
-    Measures measures = measuresBuilder.initMeasuresByProjectKey(project
-        .getKey());
+    Measures measures = dataSource.getMeasures(project.getKey());
     project.setMeasures(measures);
   }
 
   private void initMostViolatedRules(final Project project) throws IOException,
       ReportException {
     LOG.info("    Retrieving most violated rules");
+    int limit = 10;
+    if (pdfRefporter.getIssueSource() != null) {
+      project.getMostViolatedRules().addAll(
+          pdfRefporter.getIssueSource().getMostViolatedRules(project.getKey(),
+              limit, "workbook".equals(pdfRefporter.getReportType()),
+              pdfRefporter.getViolationStore()));
+      return;
+    }
+    if (initMostViolatedRulesFromFacets(project, limit)) {
+      return;
+    }
     LOG.debug("Accessing Sonar: getting most violated rules");
     String[] priorities = Priority.getPrioritiesArray();
 
     // Reverse iteration to get violations with upper level first
-    int limit = 10;
     for (int i = priorities.length - 1; i >= 0 && limit > 0; i--) {
 
       ResourceQuery query = ResourceQuery.create(project.getKey());
@@ -183,48 +197,61 @@ public class ProjectBuilder {
     }
   }
 
+  /**
+   * One issues search request (rules and severities facets) instead of one
+   * request by priority.
+   *
+   * @return false if the server does not provide issues facets
+   */
+  private boolean initMostViolatedRulesFromFacets(final Project project,
+      final int limit) throws ReportException, IOException {
+    if (!(sonar.getConnector() instanceof GzipHttpConnector)) {
+      return false;
+    }
+    if (issueFacetsBuilder == null) {
+      issueFacetsBuilder = IssueFacetsBuilder
+          .getInstance((GzipHttpConnector) sonar.getConnector());
+    }
+    List<Rule> rules = issueFacetsBuilder.getMostViolatedRules(
+        project.getKey(), limit);
+    if (rules == null) {
+      LOG.debug("Issues facets not available, using violations metrics");
+      return false;
+    }
+    RuleBuilder ruleBuilder = RuleBuilder.getInstance(credentials, sonar);
+    Iterator<Rule> it = rules.iterator();
+    while (it.hasNext()) {
+      Rule rule = it.next();
+      if ("workbook".equals(pdfRefporter.getReportType())) {
+        loadViolatedResources(ruleBuilder, rule, project);
+      }
+      project.getMostViolatedRules().add(rule);
+    }
+    return true;
+  }
+
   private void initMostViolatedFiles(final Project project) throws IOException {
     LOG.info("    Retrieving most violated files");
     LOG.debug("Accessing Sonar: getting most violated files");
 
-    ResourceQuery resourceQuery = ResourceQuery.createForMetrics(
-        project.getKey(), MetricKeys.VIOLATIONS);
-    resourceQuery.setScopes("FIL");
-    resourceQuery.setDepth(-1);
-    resourceQuery.setLimit(5);
-    List<Resource> resources = sonar.findAll(resourceQuery);
-    List<FileInfo> fileInfoList = FileInfoBuilder.initFromDocument(resources,
-        FileInfo.VIOLATIONS_CONTENT);
-    project.setMostViolatedFiles(fileInfoList);
-
+    project.setMostViolatedFiles(dataSource.getTopFiles(project.getKey(),
+        FileInfo.VIOLATIONS_CONTENT, 5));
   }
 
   private void initMostComplexElements(final Project project) throws IOException {
     LOG.info("    Retrieving most complex elements");
     LOG.debug("Accessing Sonar: getting most complex elements");
 
-    ResourceQuery resourceQuery = ResourceQuery.createForMetrics(
-        project.getKey(), MetricKeys.COMPLEXITY);
-    resourceQuery.setScopes("FIL");
-    resourceQuery.setDepth(-1);
-    resourceQuery.setLimit(5);
-    List<Resource> resources = sonar.findAll(resourceQuery);
-    project.setMostComplexFiles(FileInfoBuilder.initFromDocument(resources,
-        FileInfo.CCN_CONTENT));
+    project.setMostComplexFiles(dataSource.getTopFiles(project.getKey(),
+        FileInfo.CCN_CONTENT, 5));
   }
 
   private void initMostDuplicatedFiles(final Project project) throws IOException {
     LOG.info("    Retrieving most duplicated files");
     LOG.debug("Accessing Sonar: getting most duplicated files");
 
-    ResourceQuery resourceQuery = ResourceQuery.createForMetrics(
-        project.getKey(), MetricKeys.DUPLICATED_LINES);
-    resourceQuery.setScopes("FIL");
-    resourceQuery.setDepth(-1);
-    resourceQuery.setLimit(5);
-    List<Resource> resources = sonar.findAll(resourceQuery);
-    project.setMostDuplicatedFiles(FileInfoBuilder.initFromDocument(resources,
-        FileInfo.DUPLICATIONS_CONTENT));
+    project.setMostDuplicatedFiles(dataSource.getTopFiles(project.getKey(),
+        FileInfo.DUPLICATIONS_CONTENT, 5));
   }
 
   private int initMostViolatedRulesFromNode(final Project project,
@@ -245,8 +272,7 @@ public class ProjectBuilder {
       if (!formattedValueNode.equals("0")) {
         Rule rule = ruleBuilder.initFromNode(measureNode);
         if ("workbook".equals(pdfRefporter.getReportType())) {
-          ruleBuilder.loadViolatedResources(rule, rule.getKey(),
-              project.getKey());
+          loadViolatedResources(ruleBuilder, rule, project);
         }
         project.getMostViolatedRules().add(rule);
         count++;
@@ -255,4 +281,20 @@ public class ProjectBuilder {
     return count;
   }
 
+  /**
+   * All the violations go to the reporter's violation store when the full
+   * issues export is enabled, only the top ones otherwise.
+   */
+  private void loadViolatedResources(final RuleBuilder ruleBuilder,
+      final Rule rule, final Project project) throws ReportException,
+      IOException {
+    ViolationStore store = pdfRefporter.getViolationStore();
+    if (store != null) {
+      ruleBuilder.loadAllViolatedResources(rule, rule.getKey(),
+          project.getKey(), store);
+    } else {
+      ruleBuilder.loadViolatedResources(rule, rule.getKey(), project.getKey());
+    }
+  }
+
 }
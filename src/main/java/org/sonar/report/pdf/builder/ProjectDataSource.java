@@ -0,0 +1,54 @@
+/*
+ * SonarQube PDF Report
+ * Copyright (C) 2010 klicap - ingenieria del puzle
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.report.pdf.builder;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.sonar.report.pdf.entity.FileInfo;
+import org.sonar.report.pdf.entity.Measures;
+import org.sonar.report.pdf.entity.Project;
+
+/**
+ * Where ProjectBuilder reads the project data from: Sonar web services, or the
+ * batch itself when the report is generated by the post-job.
+ */
+public interface ProjectDataSource {
+
+  /**
+   * Init project name and description.
+   *
+   * @return false if the project is not found
+   */
+  boolean initProject(Project project) throws IOException;
+
+  Measures getMeasures(String projectKey) throws IOException;
+
+  /**
+   * Files with the greatest values for the given content (see FileInfo).
+   */
+  List<FileInfo> getTopFiles(String projectKey, int content, int limit) throws IOException;
+
+  /**
+   * Keys of the direct child projects (modules).
+   */
+  List<String> getModuleKeys(String projectKey) throws IOException;
+
+}
@@ -25,6 +25,7 @@ import java.net.MalformedURLException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.report.pdf.entity.RadarGraphic;
+import org.sonar.report.pdf.util.ChartCache;
 
 import com.lowagie.text.BadElementException;
 import com.lowagie.text.Image;
@@ -50,6 +51,14 @@ public class RadarGraphicBuilder {
   }
 
   public Image getGraphic(final RadarGraphic radarGraphic) {
+    return getGraphic(radarGraphic, null);
+  }
+
+  /**
+   * @param cache
+   *          Cache of downloaded charts, null to download the chart
+   */
+  public Image getGraphic(final RadarGraphic radarGraphic, final ChartCache cache) {
     Image image = null;
 
     try {
@@ -65,7 +74,8 @@ public class RadarGraphicBuilder {
           + radarGraphic.getPortability() + "," + radarGraphic.getReliavility()
           + "," + radarGraphic.getUsability();
       LOG.debug("Getting radar graphic: " + requestUrl);
-      image = Image.getInstance(requestUrl);
+      image = cache != null ? Image.getInstance(cache.download(requestUrl))
+          : Image.getInstance(requestUrl);
       image.setAlignment(Image.ALIGN_MIDDLE);
     } catch (BadElementException e) {
       LOG.error("Can not generate radar graphic", e);
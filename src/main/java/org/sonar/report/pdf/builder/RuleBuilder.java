@@ -21,6 +21,9 @@ package org.sonar.report.pdf.builder;
 
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -29,32 +32,45 @@ import org.dom4j.DocumentException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.utils.HttpDownloader.HttpException;
+import org.sonar.report.pdf.entity.Priority;
 import org.sonar.report.pdf.entity.Rule;
 import org.sonar.report.pdf.entity.Violation;
 import org.sonar.report.pdf.entity.exception.ReportException;
 import org.sonar.report.pdf.util.Credentials;
+import org.sonar.report.pdf.util.GzipHttpConnector;
+import org.sonar.report.pdf.util.ViolationStore;
 import org.sonar.wsclient.Sonar;
 import org.sonar.wsclient.SonarClient;
 import org.sonar.wsclient.issue.Issue;
-import org.sonar.wsclient.issue.IssueClient;
 import org.sonar.wsclient.issue.IssueQuery;
 import org.sonar.wsclient.issue.Issues;
+import org.sonar.wsclient.issue.internal.IssueJsonParser;
 
 public class RuleBuilder {
 
   private static final Logger LOG = LoggerFactory.getLogger(RuleBuilder.class);
 
+  private static final String ISSUES_SEARCH_PATH = "/api/issues/search";
+
+  public static final int TOP_VIOLATIONS_LIMIT = 20;
+
+  // Max page size accepted by the issues search web service
+  private static final int EXPORT_PAGE_SIZE = 500;
+
   private static RuleBuilder builder;
 
   private Credentials credentials;
 
-  public RuleBuilder(final Credentials credentials) {
+  private Sonar sonar;
+
+  public RuleBuilder(final Credentials credentials, final Sonar sonar) {
     this.credentials = credentials;
+    this.sonar = sonar;
   }
 
   public static RuleBuilder getInstance(final Credentials credentials, final Sonar sonar) {
     if (builder == null) {
-      return new RuleBuilder(credentials);
+      return new RuleBuilder(credentials, sonar);
     }
 
     return builder;
@@ -93,16 +109,13 @@ public class RuleBuilder {
       // ruleKey = URLEncoder.encode(ruleKey, "UTF8");
       LOG.debug("Accessing Sonar: getting violated resurces by one given rule (" + ruleKey + ")");
 
-      SonarClient client = SonarClient.create(credentials.getUrl());
-      IssueClient issueClient = client.issueClient();
-
       IssueQuery issueQuery = IssueQuery.create();
       issueQuery.componentRoots(projectKey);
-      issueQuery.pageSize(20);
+      issueQuery.pageSize(TOP_VIOLATIONS_LIMIT);
       issueQuery.rules(ruleKey);
       // "&scopes=FIL&depth=-1&limit=20
 
-      Issues issues = issueClient.find(issueQuery);
+      Issues issues = findIssues(issueQuery);
 
       List<Issue> violatedResources = issues.list();
       List<Violation> topViolatedResources = new LinkedList<Violation>();
@@ -126,4 +139,82 @@ public class RuleBuilder {
     }
   }
 
+  /**
+   * Full issues export: all the violations of the rule are requested page by
+   * page and appended to the store, only the first ones are kept in memory as
+   * top violated resources.
+   */
+  public void loadAllViolatedResources(final Rule rule, final String ruleKey, final String projectKey,
+      final ViolationStore store) throws ReportException, IOException {
+
+    if (ruleKey == null) {
+      throw new ReportException("Rule not initialized. Forget call to initFromNode() previously?");
+    }
+    LOG.debug("Accessing Sonar: getting all violated resources by one given rule (" + ruleKey + ")");
+
+    List<Violation> topViolatedResources = new LinkedList<Violation>();
+    rule.setTopViolatedResources(topViolatedResources);
+    long start = store.size();
+    int pageIndex = 1;
+    int pages = 1;
+    while (pageIndex <= pages) {
+      IssueQuery issueQuery = IssueQuery.create();
+      issueQuery.componentRoots(projectKey);
+      issueQuery.pageSize(EXPORT_PAGE_SIZE);
+      issueQuery.pageIndex(pageIndex);
+      issueQuery.rules(ruleKey);
+
+      Issues issues = findIssues(issueQuery);
+      if (issues.list().isEmpty()) {
+        break;
+      }
+      if (issues.paging() != null && issues.paging().pages() != null) {
+        pages = issues.paging().pages().intValue();
+      }
+      Iterator<Issue> it = issues.list().iterator();
+      while (it.hasNext()) {
+        Issue resource = it.next();
+        if (rule.getMessage() == null) {
+          rule.setMessage(resource.message());
+        }
+        store.add(resource.componentKey(), resource.line());
+        if (topViolatedResources.size() < TOP_VIOLATIONS_LIMIT) {
+          topViolatedResources.add(new Violation(resource.line() != null ? String.valueOf(resource.line()) : "N/A",
+              resource.componentKey(), ""));
+        }
+      }
+      pageIndex++;
+    }
+    rule.setViolations(store.getViolations(start, store.size()));
+    LOG.debug("\t " + (store.size() - start) + " violations exported in " + (pageIndex - 1) + " pages");
+  }
+
+  /**
+   * Sort the most violated rules by severity (upper level first) and
+   * violations count.
+   */
+  public static void sortMostViolatedRules(final List<Rule> rules) {
+    final List<String> priorities = Arrays.asList(Priority.getPrioritiesArray());
+    Collections.sort(rules, new Comparator<Rule>() {
+      public int compare(final Rule rule1, final Rule rule2) {
+        int bySeverity = priorities.indexOf(rule2.getSeverity()) - priorities.indexOf(rule1.getSeverity());
+        return bySeverity != 0 ? bySeverity : rule2.getViolationsNumber().compareTo(rule1.getViolationsNumber());
+      }
+    });
+  }
+
+  /**
+   * Issues are requested through the shared (gzip) transport when available.
+   */
+  private Issues findIssues(final IssueQuery issueQuery) throws ReportException {
+    if (sonar != null && sonar.getConnector() instanceof GzipHttpConnector) {
+      String json = ((GzipHttpConnector) sonar.getConnector()).get(ISSUES_SEARCH_PATH, issueQuery.urlParams());
+      if (json == null) {
+        throw new ReportException("Can't retrieve issues: " + ISSUES_SEARCH_PATH + " not found");
+      }
+      return new IssueJsonParser().parseIssues(json);
+    }
+    return SonarClient.create(credentials.getUrl()).issueClient().find(issueQuery);
+  }
+
 }
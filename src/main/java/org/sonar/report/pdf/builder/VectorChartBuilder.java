@@ -0,0 +1,187 @@
+/*
+ * SonarQube PDF Report
+ * Copyright (C) 2010 klicap - ingenieria del puzle
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.report.pdf.builder;
+
+import java.awt.Color;
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.report.pdf.Style;
+import org.sonar.report.pdf.entity.ComplexityDistribution;
+
+import com.lowagie.text.BadElementException;
+import com.lowagie.text.DocumentException;
+import com.lowagie.text.Image;
+import com.lowagie.text.pdf.BaseFont;
+import com.lowagie.text.pdf.PdfContentByte;
+import com.lowagie.text.pdf.PdfTemplate;
+import com.lowagie.text.pdf.PdfWriter;
+
+/**
+ * Charts drawn as vector graphics in a template of the document, without
+ * requesting the /chart web service. Charts have the same size and colors
+ * as the server ones.
+ */
+public class VectorChartBuilder {
+
+  private static final Logger LOG = LoggerFactory.getLogger(VectorChartBuilder.class);
+
+  private static final Color LINE_COLOR = new Color(0x77, 0x77, 0x77);
+  private static final Color GRID_COLOR = new Color(0xDD, 0xDD, 0xDD);
+  private static final float FONT_SIZE = 7;
+
+  private static final float DISTRIBUTION_WIDTH = 300;
+  private static final float DISTRIBUTION_HEIGHT = 200;
+  private static final int GRID_LINES = 4;
+
+  private static VectorChartBuilder builder;
+
+  private VectorChartBuilder() {
+  }
+
+  public static VectorChartBuilder getInstance() {
+    if (builder == null) {
+      return new VectorChartBuilder();
+    }
+
+    return builder;
+  }
+
+  /**
+   * Bar chart of the complexity distribution (same as "cvb" server chart).
+   *
+   * @return The chart, or null if the distribution has no values
+   */
+  public Image getGraphic(final ComplexityDistribution complexityDistribution,
+      final PdfWriter writer) {
+    double[] values = parseValues(complexityDistribution.getyValues());
+    if (values == null) {
+      return null;
+    }
+    Image image = null;
+    try {
+      PdfTemplate template = writer.getDirectContent().createTemplate(
+          DISTRIBUTION_WIDTH, DISTRIBUTION_HEIGHT);
+      drawDistribution(template, complexityDistribution.getxValues(),
+          complexityDistribution.getyValues(), values);
+      image = Image.getInstance(template);
+      image.setAlignment(Image.ALIGN_MIDDLE);
+    } catch (BadElementException e) {
+      LOG.error("Can not generate complexity distribution image", e);
+    } catch (DocumentException e) {
+      LOG.error("Can not generate complexity distribution image", e);
+    } catch (IOException e) {
+      LOG.error("Can not generate complexity distribution image", e);
+    }
+    return image;
+  }
+
+  private void drawDistribution(final PdfTemplate template,
+      final String[] xLabels, final String[] yLabels, final double[] values)
+      throws DocumentException, IOException {
+    BaseFont font = Style.getBaseFont(BaseFont.HELVETICA, BaseFont.WINANSI, false);
+    float left = 30;
+    float bottom = 20;
+    float top = DISTRIBUTION_HEIGHT - 15;
+    float right = DISTRIBUTION_WIDTH - 10;
+
+    double max = 0;
+    for (double value : values) {
+      max = Math.max(max, value);
+    }
+    double step = Math.max(1, Math.ceil(max / GRID_LINES));
+    double scale = (top - bottom) / (step * GRID_LINES);
+
+    // Grid and vertical axis labels
+    template.setLineWidth(0.5f);
+    template.setColorStroke(GRID_COLOR);
+    for (int i = 1; i <= GRID_LINES; i++) {
+      float y = (float) (bottom + i * step * scale);
+      template.moveTo(left, y);
+      template.lineTo(right, y);
+    }
+    template.stroke();
+    template.beginText();
+    template.setFontAndSize(font, FONT_SIZE);
+    template.setColorFill(LINE_COLOR);
+    for (int i = 0; i <= GRID_LINES; i++) {
+      template.showTextAligned(PdfContentByte.ALIGN_RIGHT,
+          String.valueOf((long) (i * step)), left - 3,
+          (float) (bottom + i * step * scale) - 2, 0);
+    }
+    template.endText();
+
+    // Bars, values and horizontal axis labels
+    float slot = (right - left) / values.length;
+    float barWidth = slot * 0.6f;
+    template.setColorFill(LINE_COLOR);
+    for (int i = 0; i < values.length; i++) {
+      float barHeight = (float) (values[i] * scale);
+      if (barHeight > 0) {
+        template.rectangle(left + i * slot + (slot - barWidth) / 2, bottom,
+            barWidth, barHeight);
+      }
+    }
+    template.fill();
+    template.beginText();
+    template.setFontAndSize(font, FONT_SIZE);
+    for (int i = 0; i < values.length; i++) {
+      float center = left + i * slot + slot / 2;
+      template.showTextAligned(PdfContentByte.ALIGN_CENTER, yLabels[i],
+          center, (float) (bottom + values[i] * scale) + 2, 0);
+      template.showTextAligned(PdfContentByte.ALIGN_CENTER, xLabels[i] + "+",
+          center, bottom - 10, 0);
+    }
+    template.endText();
+
+    // Axes
+    template.setLineWidth(1);
+    template.setColorStroke(LINE_COLOR);
+    template.moveTo(left, top);
+    template.lineTo(left, bottom);
+    template.lineTo(right, bottom);
+    template.stroke();
+  }
+
+  /**
+   * @return The values, or null if there are no values or some of them is not
+   *         a number
+   */
+  private static double[] parseValues(final String[] formattedValues) {
+    if (formattedValues == null || formattedValues.length == 0) {
+      return null;
+    }
+    double[] values = new double[formattedValues.length];
+    for (int i = 0; i < formattedValues.length; i++) {
+      if (formattedValues[i] == null) {
+        return null;
+      }
+      try {
+        values[i] = Double.parseDouble(formattedValues[i].trim());
+      } catch (NumberFormatException e) {
+        LOG.debug("Chart value is not a number: " + formattedValues[i]);
+        return null;
+      }
+    }
+    return values;
+  }
+
+}
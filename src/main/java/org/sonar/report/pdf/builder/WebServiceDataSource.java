@@ -0,0 +1,93 @@
+/*
+ * SonarQube PDF Report
+ * Copyright (C) 2010 klicap - ingenieria del puzle
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.report.pdf.builder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.report.pdf.entity.FileInfo;
+import org.sonar.report.pdf.entity.Measures;
+import org.sonar.report.pdf.entity.Project;
+import org.sonar.wsclient.Sonar;
+import org.sonar.wsclient.services.Resource;
+import org.sonar.wsclient.services.ResourceQuery;
+
+/**
+ * Project data from Sonar web services (standalone use).
+ */
+public class WebServiceDataSource implements ProjectDataSource {
+
+  private static final Logger LOG = LoggerFactory.getLogger(WebServiceDataSource.class);
+
+  private Sonar sonar;
+
+  public WebServiceDataSource(final Sonar sonar) {
+    this.sonar = sonar;
+  }
+
+  public boolean initProject(final Project project) {
+    ResourceQuery rq = ResourceQuery.create(project.getKey());
+    rq.setDepth(0);
+    Resource resource = sonar.find(rq);
+    if (resource == null) {
+      return false;
+    }
+    project.setName(resource.getName());
+    project.setDescription(resource.getDescription());
+    return true;
+  }
+
+  public Measures getMeasures(final String projectKey) throws IOException {
+    MeasuresBuilder measuresBuilder = MeasuresBuilder.getInstance(sonar);
+    return measuresBuilder.initMeasuresByProjectKey(projectKey);
+  }
+
+  public List<FileInfo> getTopFiles(final String projectKey, final int content, final int limit) {
+    ResourceQuery resourceQuery = ResourceQuery.createForMetrics(projectKey, FileInfoBuilder.getMetricKey(content));
+    resourceQuery.setScopes("FIL");
+    resourceQuery.setDepth(-1);
+    resourceQuery.setLimit(limit);
+    List<Resource> resources = sonar.findAll(resourceQuery);
+    return FileInfoBuilder.initFromDocument(resources, content);
+  }
+
+  public List<String> getModuleKeys(final String projectKey) {
+    LOG.debug("Accessing Sonar: getting child projects");
+
+    ResourceQuery resourceQueryChild = ResourceQuery.create(projectKey);
+    resourceQueryChild.setDepth(1);
+    List<Resource> childNodes = sonar.findAll(resourceQueryChild);
+
+    List<String> moduleKeys = new ArrayList<String>();
+    Iterator<Resource> it = childNodes.iterator();
+    while (it.hasNext()) {
+      Resource childNode = it.next();
+      if ("PRJ".equals(childNode.getScope())) {
+        moduleKeys.add(childNode.getKey());
+      }
+    }
+    return moduleKeys;
+  }
+
+}
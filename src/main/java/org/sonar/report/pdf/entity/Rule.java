@@ -32,9 +32,15 @@ public class Rule {
   // Rule description
   private String description;
 
+  // Rule severity (see Priority)
+  private String severity;
+
   // Violations of this rule: <resource key, violation line> (with limit 100)
   private List<Violation> topViolatedResources;
 
+  // All the violations of this rule (full issues export), read from disk
+  private Iterable<Violation> violations;
+
   // Total vilations of this rule
   private Double violationsNumber;
 
@@ -51,6 +57,14 @@ public class Rule {
     return description;
   }
 
+  public String getSeverity() {
+    return severity;
+  }
+
+  public void setSeverity(final String severity) {
+    this.severity = severity;
+  }
+
   public List<Violation> getTopViolations() {
     return topViolatedResources;
   }
@@ -108,4 +122,16 @@ public class Rule {
     this.topViolatedResources = topViolatedResources;
   }
 
+  /**
+   * All the violations when the full issues export is enabled, top violated
+   * resources otherwise.
+   */
+  public Iterable<Violation> getViolations() {
+    return violations != null ? violations : topViolatedResources;
+  }
+
+  public void setViolations(final Iterable<Violation> violations) {
+    this.violations = violations;
+  }
+
 }
@@ -28,6 +28,7 @@ import org.sonar.api.Property;
 import org.sonar.api.PropertyType;
 import org.sonar.api.SonarPlugin;
 import org.sonar.report.pdf.batch.PDFPostJob;
+import org.sonar.report.pdf.util.EmbeddedFonts;
 
 @Properties({ 
   @Property(
@@ -69,6 +70,204 @@ import org.sonar.report.pdf.batch.PDFPostJob;
     project = true,
     module = false,
     type = PropertyType.PASSWORD
+  ),
+  @Property(
+    key=PDFPostJob.ISSUES_FULL_EXPORT,
+    name="Full issues export",
+    description = "Include all the violations of the most violated rules in the workbook (not only the first 20). Violations are kept in a temporary file while the report is generated.",
+    defaultValue = "" + PDFPostJob.ISSUES_FULL_EXPORT_DEFAULT_VALUE,
+    global = true,
+    project = true,
+    module = false,
+    type = PropertyType.BOOLEAN
+  ),
+  @Property(
+    key=PDFPostJob.SINGLE_PASS,
+    name="Single-pass assembly",
+    description = "Write front page, table of contents and body in one PDF document instead of merging three documents.",
+    defaultValue = "" + PDFPostJob.SINGLE_PASS_DEFAULT_VALUE,
+    global = true,
+    project = true,
+    module = false,
+    type = PropertyType.BOOLEAN
+  ),
+  @Property(
+    key=PDFPostJob.SPILL_TO_DISK,
+    name="Spill to disk",
+    description = "Write the intermediate documents (front page, table of contents and body) to temporary files before merging them. Used when single-pass assembly is disabled.",
+    defaultValue = "" + PDFPostJob.SPILL_TO_DISK_DEFAULT_VALUE,
+    global = true,
+    project = true,
+    module = false,
+    type = PropertyType.BOOLEAN
+  ),
+  @Property(
+    key=PDFPostJob.CHARTS,
+    name="Charts",
+    description = "Charts source: downloaded from the server /chart web service, or drawn locally as vector graphics (no web service calls).",
+    defaultValue = PDFPostJob.CHARTS_DEFAULT_VALUE,
+    global = true,
+    project = true,
+    module = false,
+    type = PropertyType.SINGLE_SELECT_LIST,
+    options = { PDFPostJob.CHARTS_DEFAULT_VALUE, PDFPostJob.CHARTS_LOCAL }
+  ),
+  @Property(
+    key=PDFPostJob.CHARTS_CACHE_DIR,
+    name="Charts cache directory",
+    description = "Directory where downloaded charts are kept between runs (empty: charts are only cached in memory).",
+    defaultValue = PDFPostJob.CHARTS_CACHE_DIR_DEFAULT_VALUE,
+    global = true,
+    project = true,
+    module = false
+  ),
+  @Property(
+    key=PDFPostJob.PARALLEL_CHAPTERS,
+    name="Parallel module chapters",
+    description = "Render the module chapters of executive and workbook reports on a pool of threads (one per processor), then append them in order.",
+    defaultValue = "" + PDFPostJob.PARALLEL_CHAPTERS_DEFAULT_VALUE,
+    global = true,
+    project = true,
+    module = false,
+    type = PropertyType.BOOLEAN
+  ),
+  @Property(
+    key=PDFPostJob.CHAPTERS_CACHE_DIR,
+    name="Chapters cache directory",
+    description = "Directory where the rendered module chapters of executive and workbook reports are kept between runs. Chapters whose data has not changed are copied from the cache (empty: no cache).",
+    defaultValue = PDFPostJob.CHAPTERS_CACHE_DIR_DEFAULT_VALUE,
+    global = true,
+    project = true,
+    module = false
+  ),
+  @Property(
+    key=PDFPostJob.STREAMING_TABLES,
+    name="Streaming violations tables",
+    description = "Write the detailed violations tables of the workbook to the document in chunks of rows, with repeated headers, instead of building each table in memory.",
+    defaultValue = "" + PDFPostJob.STREAMING_TABLES_DEFAULT_VALUE,
+    global = true,
+    project = true,
+    module = false,
+    type = PropertyType.BOOLEAN
+  ),
+  @Property(
+    key=PDFPostJob.STREAMING_CHAPTERS,
+    name="Streaming chapters",
+    description = "Write each section of a chapter to the document as soon as it is finished, instead of building the whole chapter in memory.",
+    defaultValue = "" + PDFPostJob.STREAMING_CHAPTERS_DEFAULT_VALUE,
+    global = true,
+    project = true,
+    module = false,
+    type = PropertyType.BOOLEAN
+  ),
+  @Property(
+    key=PDFPostJob.FULL_COMPRESSION,
+    name="Full compression",
+    description = "Write the report with cross-reference and object streams (PDF 1.5).",
+    defaultValue = "" + PDFPostJob.FULL_COMPRESSION_DEFAULT_VALUE,
+    global = true,
+    project = true,
+    module = false,
+    type = PropertyType.BOOLEAN
+  ),
+  @Property(
+    key=PDFPostJob.COMPRESSION_LEVEL,
+    name="Compression level",
+    description = "Deflate level of the report streams, from 0 (no compression) to 9 (best compression). -1: default level.",
+    defaultValue = "" + PDFPostJob.COMPRESSION_LEVEL_DEFAULT_VALUE,
+    global = true,
+    project = true,
+    module = false,
+    type = PropertyType.INTEGER
+  ),
+  @Property(
+    key=PDFPostJob.SMART_COPY,
+    name="Smart copy",
+    description = "Store only once the identical resources (i.e. images) of the front page, table of contents and body when they are merged.",
+    defaultValue = "" + PDFPostJob.SMART_COPY_DEFAULT_VALUE,
+    global = true,
+    project = true,
+    module = false,
+    type = PropertyType.BOOLEAN
+  ),
+  @Property(
+    key=PDFPostJob.PARALLEL_DEFLATE,
+    name="Parallel compression",
+    description = "Write the front page, table of contents and body with uncompressed streams, then deflate them on a pool of threads (one per processor) while they are merged. The report is the same as without this option. Not used with single-pass assembly.",
+    defaultValue = "" + PDFPostJob.PARALLEL_DEFLATE_DEFAULT_VALUE,
+    global = true,
+    project = true,
+    module = false,
+    type = PropertyType.BOOLEAN
+  ),
+  @Property(
+    key=PDFPostJob.LINEARIZE,
+    name="Linearize",
+    description = "Linearize the report (fast web view): viewers show the first pages before the whole file is downloaded. Requires qpdf on the analysis machine, the report is not linearized if qpdf is not available.",
+    defaultValue = "" + PDFPostJob.LINEARIZE_DEFAULT_VALUE,
+    global = true,
+    project = true,
+    module = false,
+    type = PropertyType.BOOLEAN
+  ),
+  @Property(
+    key=PDFPostJob.LINEARIZE_COMMAND,
+    name="qpdf command",
+    description = "qpdf executable used to linearize the report (path, or name in the PATH). Global setting only, it is not read from the project settings or the analysis properties.",
+    defaultValue = PDFPostJob.LINEARIZE_COMMAND_DEFAULT_VALUE,
+    global = true,
+    project = false,
+    module = false
+  ),
+  @Property(
+    key=PDFPostJob.IMAGES_OPTIMIZE,
+    name="Optimize images",
+    description = "Downsample the logo to its rendered size and recompress the logo and the server charts before they are embedded. Optimized images are cached with the charts.",
+    defaultValue = "" + PDFPostJob.IMAGES_OPTIMIZE_DEFAULT_VALUE,
+    global = true,
+    project = true,
+    module = false,
+    type = PropertyType.BOOLEAN
+  ),
+  @Property(
+    key=PDFPostJob.IMAGES_DPI,
+    name="Images resolution",
+    description = "Resolution (DPI) of the optimized images at their rendered size.",
+    defaultValue = "" + PDFPostJob.IMAGES_DPI_DEFAULT_VALUE,
+    global = true,
+    project = true,
+    module = false,
+    type = PropertyType.INTEGER
+  ),
+  @Property(
+    key=PDFPostJob.IMAGES_QUALITY,
+    name="Images quality",
+    description = "JPEG quality of the optimized images, from 0 to 1.",
+    defaultValue = "" + PDFPostJob.IMAGES_QUALITY_DEFAULT_VALUE,
+    global = true,
+    project = true,
+    module = false,
+    type = PropertyType.FLOAT
+  ),
+  @Property(
+    key=PDFPostJob.FONTS_EMBED,
+    name="Embedded fonts",
+    description = "Write the text with the TrueType font of sonar.pdf.fonts.file instead of the standard PDF fonts: never, only the text the standard fonts can not encode (i.e. non-Latin project names), or all the text. Only the glyphs used by the report are embedded.",
+    defaultValue = PDFPostJob.FONTS_EMBED_DEFAULT_VALUE,
+    global = true,
+    project = true,
+    module = false,
+    type = PropertyType.SINGLE_SELECT_LIST,
+    options = { EmbeddedFonts.NEVER, EmbeddedFonts.FALLBACK, EmbeddedFonts.ALWAYS }
+  ),
+  @Property(
+    key=PDFPostJob.FONTS_FILE,
+    name="Font file",
+    description = "TrueType font (.ttf) file embedded in the report, i.e. /usr/share/fonts/truetype/dejavu/DejaVuSans.ttf.",
+    defaultValue = PDFPostJob.FONTS_FILE_DEFAULT_VALUE,
+    global = true,
+    project = true,
+    module = false
   )
 })
 public class PDFReportPlugin extends SonarPlugin {
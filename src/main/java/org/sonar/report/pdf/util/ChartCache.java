@@ -0,0 +1,235 @@
+/*
+ * SonarQube PDF Report
+ * Copyright (C) 2010 klicap - ingenieria del puzle
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.report.pdf.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Rendered charts, keyed by a hash of the chart type, size and data. Recent
+ * charts are kept in memory (shared by all the reports of the JVM) and, when
+ * a directory is given, on disk between runs.
+ */
+public class ChartCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ChartCache.class);
+
+  private static final int MEMORY_ENTRIES = 64;
+  private static final int BUFFER_SIZE = 8 * 1024;
+  private static final String EXTENSION = ".chart";
+
+  // Least recently used charts are evicted first: <key, chart bytes>
+  private static final Map<String, byte[]> MEMORY = new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected boolean removeEldestEntry(final Map.Entry<String, byte[]> eldest) {
+      return size() > MEMORY_ENTRIES;
+    }
+  };
+
+  private File directory;
+  private ImageOptimizer optimizer;
+  private int hits;
+  private int misses;
+
+  /**
+   * @param directory
+   *          Disk tier directory, null for memory only
+   */
+  public ChartCache(final File directory) {
+    if (directory != null && (directory.isDirectory() || directory.mkdirs())) {
+      this.directory = directory;
+    } else if (directory != null) {
+      LOG.warn("Can not create charts cache directory " + directory + ", only memory cache is used");
+    }
+  }
+
+  /**
+   * SHA-1 (hex) of the chart description parts.
+   */
+  public static String getKey(final String... parts) {
+    return getKey((byte[]) null, parts);
+  }
+
+  /**
+   * SHA-1 (hex) of the data (an image, null if none) and the description
+   * parts.
+   */
+  public static String getKey(final byte[] data, final String... parts) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      if (data != null) {
+        digest.update(data);
+      }
+      for (String part : parts) {
+        digest.update(String.valueOf(part).getBytes("UTF-8"));
+        digest.update((byte) 0);
+      }
+      StringBuilder key = new StringBuilder();
+      for (byte b : digest.digest()) {
+        key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+      return key.toString();
+    } catch (NoSuchAlgorithmException e) {
+      // SHA-1 and UTF-8 are supported by every JVM
+      throw new IllegalStateException("Can not compute chart key", e);
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException("Can not compute chart key", e);
+    }
+  }
+
+  /**
+   * @return The chart bytes, or null if the chart is not cached
+   */
+  public byte[] get(final String key) {
+    byte[] chart;
+    synchronized (MEMORY) {
+      chart = MEMORY.get(key);
+    }
+    if (chart == null && directory != null) {
+      chart = readFile(new File(directory, key + EXTENSION));
+      if (chart != null) {
+        synchronized (MEMORY) {
+          MEMORY.put(key, chart);
+        }
+      }
+    }
+    synchronized (this) {
+      if (chart != null) {
+        hits++;
+      } else {
+        misses++;
+      }
+    }
+    return chart;
+  }
+
+  /**
+   * Chart bytes from the cache, or downloaded (and cached) on a miss. The
+   * chart URL describes the chart type, size and data, it is the cache key.
+   */
+  public byte[] download(final String url) throws IOException {
+    String key = optimizer != null ? getKey(url, optimizer.getSettings())
+        : getKey(url);
+    byte[] chart = get(key);
+    if (chart == null) {
+      chart = read(new URL(url).openStream());
+      if (optimizer != null) {
+        chart = optimizer.optimizeChart(chart);
+      }
+      put(key, chart);
+    }
+    return chart;
+  }
+
+  /**
+   * Optimizer of the downloaded charts, null (default) to keep them as they
+   * are.
+   */
+  public void setImageOptimizer(final ImageOptimizer optimizer) {
+    this.optimizer = optimizer;
+  }
+
+  public ImageOptimizer getImageOptimizer() {
+    return optimizer;
+  }
+
+  public void put(final String key, final byte[] chart) {
+    synchronized (MEMORY) {
+      MEMORY.put(key, chart);
+    }
+    if (directory != null) {
+      writeFile(new File(directory, key + EXTENSION), chart);
+    }
+  }
+
+  public synchronized void logStatistics() {
+    if (hits + misses > 0) {
+      LOG.info("Charts cache: " + hits + " hits, " + misses + " misses");
+    }
+  }
+
+  /**
+   * Read all the bytes of a stream, the stream is closed.
+   */
+  public static byte[] read(final InputStream in) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try {
+      byte[] buffer = new byte[BUFFER_SIZE];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        bytes.write(buffer, 0, read);
+      }
+    } finally {
+      in.close();
+    }
+    return bytes.toByteArray();
+  }
+
+  private static byte[] readFile(final File file) {
+    if (!file.isFile()) {
+      return null;
+    }
+    try {
+      return read(new FileInputStream(file));
+    } catch (IOException e) {
+      LOG.error("Can not read cached chart " + file, e);
+      return null;
+    }
+  }
+
+  private static void writeFile(final File file, final byte[] chart) {
+    // Written to a temporary file first: concurrent runs never read a partial chart
+    File tmp = new File(file.getParentFile(), file.getName() + "." + System.nanoTime() + ".tmp");
+    try {
+      OutputStream out = new FileOutputStream(tmp);
+      try {
+        out.write(chart);
+      } finally {
+        out.close();
+      }
+      if (!tmp.renameTo(file) && !file.isFile()) {
+        LOG.warn("Can not store cached chart " + file);
+      }
+    } catch (IOException e) {
+      LOG.error("Can not store cached chart " + file, e);
+    } finally {
+      if (tmp.exists() && !tmp.delete()) {
+        tmp.deleteOnExit();
+      }
+    }
+  }
+
+}
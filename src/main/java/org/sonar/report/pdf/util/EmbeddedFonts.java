@@ -0,0 +1,322 @@
+/*
+ * SonarQube PDF Report
+ * Copyright (C) 2010 klicap - ingenieria del puzle
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.report.pdf.util;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.lowagie.text.Chunk;
+import com.lowagie.text.Document;
+import com.lowagie.text.DocumentException;
+import com.lowagie.text.Element;
+import com.lowagie.text.Font;
+import com.lowagie.text.Phrase;
+import com.lowagie.text.Rectangle;
+import com.lowagie.text.Section;
+import com.lowagie.text.pdf.BaseFont;
+import com.lowagie.text.pdf.PdfPCell;
+import com.lowagie.text.pdf.PdfPRow;
+import com.lowagie.text.pdf.PdfPTable;
+import com.lowagie.text.pdf.PdfPageEventHelper;
+import com.lowagie.text.pdf.PdfTemplate;
+import com.lowagie.text.pdf.PdfWriter;
+
+/**
+ * TrueType font embedded in the report instead of the base-14 fonts of the
+ * styles. The text of the elements added to the documents is written with
+ * the TrueType font (all of it, or only the text the base-14 fonts can not
+ * encode), and only the glyphs used by each document are embedded (subset).
+ * 
+ * Documents merged in the report (front page, TOC and body) share their
+ * subsets: registered as page event of their writers, the glyphs used by all
+ * of them are added to each one when it is closed, so the three subsets are
+ * identical and they are stored once by PdfSmartCopy.
+ * 
+ * TrueType fonts can not be written by several threads: each thread has its
+ * own instance of the font.
+ */
+public class EmbeddedFonts extends PdfPageEventHelper {
+
+  private static final Logger LOG = LoggerFactory.getLogger(EmbeddedFonts.class);
+
+  /**
+   * Base-14 fonts only, nothing is embedded.
+   */
+  public static final String NEVER = "never";
+
+  /**
+   * TrueType font for the text the base-14 fonts can not encode.
+   */
+  public static final String FALLBACK = "fallback";
+
+  /**
+   * TrueType font for all the text.
+   */
+  public static final String ALWAYS = "always";
+
+  private final String policy;
+  private final String fontFile;
+
+  private final ThreadLocal<BaseFont> baseFont = new ThreadLocal<BaseFont>();
+
+  // TrueType fonts of the thread: <base-14 font key, font>
+  private final ThreadLocal<Map<String, Font>> fonts = new ThreadLocal<Map<String, Font>>() {
+    @Override
+    protected Map<String, Font> initialValue() {
+      return new HashMap<String, Font>();
+    }
+  };
+
+  // Characters written with the TrueType font, by all the documents
+  private final Set<Integer> glyphs = Collections.synchronizedSet(new TreeSet<Integer>());
+
+  private EmbeddedFonts(final String policy, final String fontFile) {
+    this.policy = policy;
+    this.fontFile = fontFile;
+  }
+
+  /**
+   * @param policy NEVER, FALLBACK or ALWAYS
+   * @param fontFile TrueType (.ttf) font file
+   * @return null when fonts are not embedded (NEVER policy, or the font can
+   *         not be loaded)
+   */
+  public static EmbeddedFonts getInstance(final String policy,
+      final String fontFile) {
+    if (!FALLBACK.equals(policy) && !ALWAYS.equals(policy)) {
+      if (!NEVER.equals(policy)) {
+        LOG.warn("Invalid fonts embedding policy " + policy
+            + ", fonts are not embedded");
+      }
+      return null;
+    }
+    if (fontFile == null || fontFile.length() == 0) {
+      LOG.warn("No font file, fonts are not embedded");
+      return null;
+    }
+    EmbeddedFonts embeddedFonts = new EmbeddedFonts(policy, fontFile);
+    if (embeddedFonts.getBaseFont() == null) {
+      return null;
+    }
+    return embeddedFonts;
+  }
+
+  /**
+   * Policy and font file (i.e. in cache keys of rendered documents).
+   */
+  public String getSettings() {
+    return policy + "|" + fontFile;
+  }
+
+  /**
+   * New document, the fonts of the elements are replaced before they are
+   * added to it.
+   */
+  public Document createDocument(final Rectangle pageSize,
+      final float marginLeft, final float marginRight, final float marginTop,
+      final float marginBottom) {
+    return new Document(pageSize, marginLeft, marginRight, marginTop,
+        marginBottom) {
+      @Override
+      public boolean add(final Element element) throws DocumentException {
+        apply(element);
+        return super.add(element);
+      }
+    };
+  }
+
+  /**
+   * Replace the fonts of the element (chapter, section, paragraph, phrase,
+   * list or table), i.e. before a table is written directly on a canvas.
+   * Row heights of the tables are computed again when their fonts change.
+   * 
+   * @return true if a font was replaced
+   */
+  public boolean apply(final Element element) {
+    boolean changed = false;
+    if (element instanceof Chunk) {
+      changed = apply((Chunk) element);
+    } else if (element instanceof PdfPTable) {
+      changed = apply((PdfPTable) element);
+    } else if (element instanceof com.lowagie.text.List) {
+      changed = applyAll(((com.lowagie.text.List) element).getItems());
+    } else if (element instanceof Section) {
+      Phrase title = ((Section) element).getTitle();
+      if (title != null) {
+        // Title chunks are shared with the section title
+        changed = apply(title);
+      }
+      changed |= applyAll((Collection<?>) element);
+    } else if (element instanceof Phrase) {
+      changed = applyAll((Collection<?>) element);
+    }
+    return changed;
+  }
+
+  private boolean applyAll(final Collection<?> elements) {
+    boolean changed = false;
+    for (Object element : elements) {
+      if (element instanceof Element) {
+        changed |= apply((Element) element);
+      }
+    }
+    return changed;
+  }
+
+  private boolean apply(final PdfPTable table) {
+    boolean changed = false;
+    for (Object element : table.getRows()) {
+      PdfPRow row = (PdfPRow) element;
+      if (row == null) {
+        continue;
+      }
+      boolean rowChanged = false;
+      for (PdfPCell cell : row.getCells()) {
+        if (cell == null) {
+          continue;
+        }
+        if (cell.getPhrase() != null) {
+          rowChanged |= apply(cell.getPhrase());
+        }
+        if (cell.getTable() != null) {
+          rowChanged |= apply(cell.getTable());
+        }
+      }
+      if (rowChanged && table.getTotalWidth() > 0) {
+        row.calculateHeights();
+      }
+      changed |= rowChanged;
+    }
+    if (changed) {
+      table.calculateHeightsFast();
+    }
+    return changed;
+  }
+
+  private boolean apply(final Chunk chunk) {
+    Font font = chunk.getFont();
+    String content = chunk.getContent();
+    // Blank chunks are skipped: some of them are shared (i.e. Chunk.NEWLINE)
+    if (font.getBaseFont() != null || chunk.getImage() != null
+        || content.trim().length() == 0) {
+      return false;
+    }
+    if (FALLBACK.equals(policy) && canEncode(font, content)) {
+      return false;
+    }
+    Font embeddedFont = getFont(font);
+    if (embeddedFont == null) {
+      return false;
+    }
+    chunk.setFont(embeddedFont);
+    for (int i = 0; i < content.length(); i += Character.charCount(content.codePointAt(i))) {
+      glyphs.add(content.codePointAt(i));
+    }
+    return true;
+  }
+
+  private static boolean canEncode(final Font font, final String content) {
+    BaseFont base14 = null;
+    for (int i = 0; i < content.length(); i++) {
+      char c = content.charAt(i);
+      if (c < 128) {
+        continue;
+      }
+      if (base14 == null) {
+        base14 = font.getCalculatedBaseFont(false);
+      }
+      if (!base14.charExists(c)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * TrueType font with the size, style and color of the base-14 font.
+   */
+  private Font getFont(final Font font) {
+    String key = font.getFamilyname() + "|" + font.getSize() + "|"
+        + font.getStyle() + "|"
+        + (font.getColor() != null ? font.getColor().getRGB() : "");
+    Map<String, Font> threadFonts = fonts.get();
+    Font embeddedFont = threadFonts.get(key);
+    if (embeddedFont == null) {
+      BaseFont base = getBaseFont();
+      if (base == null) {
+        return null;
+      }
+      embeddedFont = new Font(base, font.getSize(), font.getStyle(),
+          font.getColor());
+      threadFonts.put(key, embeddedFont);
+    }
+    return embeddedFont;
+  }
+
+  private BaseFont getBaseFont() {
+    BaseFont base = baseFont.get();
+    if (base == null) {
+      try {
+        // Not cached by iText: the instance is not shared with other threads
+        base = BaseFont.createFont(fontFile, BaseFont.IDENTITY_H,
+            BaseFont.EMBEDDED, false, null, null);
+        baseFont.set(base);
+      } catch (DocumentException e) {
+        LOG.error("Can not load font " + fontFile, e);
+      } catch (IOException e) {
+        LOG.error("Can not load font " + fontFile, e);
+      }
+    }
+    return base;
+  }
+
+  /**
+   * The glyphs used by all the documents are added to the subset of the
+   * document, in a template that is not used by its pages (it is not copied
+   * when the documents are merged).
+   */
+  @Override
+  public void onCloseDocument(final PdfWriter writer, final Document document) {
+    StringBuilder text = new StringBuilder();
+    synchronized (glyphs) {
+      for (Integer glyph : glyphs) {
+        text.appendCodePoint(glyph);
+      }
+    }
+    BaseFont base = getBaseFont();
+    if (text.length() == 0 || base == null) {
+      return;
+    }
+    PdfTemplate template = writer.getDirectContent().createTemplate(1, 1);
+    template.beginText();
+    template.setFontAndSize(base, 1);
+    template.showText(text.toString());
+    template.endText();
+  }
+
+}
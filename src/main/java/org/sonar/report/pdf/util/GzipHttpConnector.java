@@ -0,0 +1,277 @@
+/*
+ * SonarQube PDF Report
+ * Copyright (C) 2010 klicap - ingenieria del puzle
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.report.pdf.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpException;
+import org.apache.commons.httpclient.HttpMethodBase;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.NameValuePair;
+import org.apache.commons.httpclient.UsernamePasswordCredentials;
+import org.apache.commons.httpclient.auth.AuthScope;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.wsclient.Host;
+import org.sonar.wsclient.connectors.ConnectionException;
+import org.sonar.wsclient.connectors.Connector;
+import org.sonar.wsclient.connectors.HttpClient3Connector;
+import org.sonar.wsclient.services.CreateQuery;
+import org.sonar.wsclient.services.DeleteQuery;
+import org.sonar.wsclient.services.Query;
+import org.sonar.wsclient.services.UpdateQuery;
+
+/**
+ * Web service transport shared by all the builders. GET requests are sent with
+ * "Accept-Encoding: gzip" and compressed responses are inflated while they are
+ * read. Transferred bytes are counted by endpoint so the savings can be
+ * checked in the logs.
+ */
+public class GzipHttpConnector extends Connector {
+
+  private static final Logger LOG = LoggerFactory.getLogger(GzipHttpConnector.class);
+
+  private static final int TIMEOUT_MILLISECONDS = 30000;
+  private static final int MAX_HOST_CONNECTIONS = 4;
+  private static final int MAX_TOTAL_CONNECTIONS = 40;
+  private static final String GZIP = "gzip";
+  private static final String UTF8 = "UTF-8";
+
+  private final Host server;
+  private final HttpClient httpClient;
+  private final HttpClient3Connector writeConnector;
+
+  // Transfer statistics: <endpoint, {requests, compressed bytes, uncompressed bytes}>
+  private final Map<String, long[]> statistics = new TreeMap<String, long[]>();
+
+  public GzipHttpConnector(final Credentials credentials) {
+    this.server = new Host(credentials.getUrl(), credentials.getUsername(), credentials.getPassword());
+    HttpConnectionManagerParams params = new HttpConnectionManagerParams();
+    params.setConnectionTimeout(TIMEOUT_MILLISECONDS);
+    params.setSoTimeout(TIMEOUT_MILLISECONDS);
+    params.setDefaultMaxConnectionsPerHost(MAX_HOST_CONNECTIONS);
+    params.setMaxTotalConnections(MAX_TOTAL_CONNECTIONS);
+    MultiThreadedHttpConnectionManager connectionManager = new MultiThreadedHttpConnectionManager();
+    connectionManager.setParams(params);
+    this.httpClient = new HttpClient(connectionManager);
+    if (server.getUsername() != null && server.getUsername().length() > 0) {
+      httpClient.getParams().setAuthenticationPreemptive(true);
+      httpClient.getState().setCredentials(AuthScope.ANY,
+          new UsernamePasswordCredentials(server.getUsername(), server.getPassword()));
+    }
+    this.writeConnector = new HttpClient3Connector(server, httpClient);
+  }
+
+  @Override
+  public String execute(final Query<?> query) {
+    GetMethod method = new GetMethod(server.getHost() + query.getUrl());
+    if (query.getLocale() != null) {
+      method.setRequestHeader("Accept-Language", query.getLocale());
+    }
+    method.getParams().setSoTimeout(query.getTimeoutMilliseconds());
+    return executeRequest(method, query.getUrl());
+  }
+
+  /**
+   * GET request for the web services that are not covered by the old
+   * {@link Query} API (i.e. /api/issues/search).
+   *
+   * @param path
+   *          Web service path, starting with "/"
+   * @param params
+   *          Request parameters, null values are skipped
+   */
+  public String get(final String path, final Map<String, Object> params) {
+    GetMethod method = new GetMethod(server.getHost() + path);
+    List<NameValuePair> pairs = new ArrayList<NameValuePair>();
+    Iterator<Map.Entry<String, Object>> it = params.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<String, Object> param = it.next();
+      if (param.getValue() != null) {
+        pairs.add(new NameValuePair(param.getKey(), param.getValue().toString()));
+      }
+    }
+    method.setQueryString(pairs.toArray(new NameValuePair[pairs.size()]));
+    return executeRequest(method, path);
+  }
+
+  @Override
+  public String execute(final CreateQuery<?> query) {
+    return writeConnector.execute(query);
+  }
+
+  @Override
+  public String execute(final UpdateQuery<?> query) {
+    return writeConnector.execute(query);
+  }
+
+  @Override
+  public String execute(final DeleteQuery query) {
+    return writeConnector.execute(query);
+  }
+
+  /**
+   * Log requests count and compressed/uncompressed bytes by endpoint.
+   */
+  public void logStatistics() {
+    synchronized (statistics) {
+      long totalCompressed = 0;
+      long totalUncompressed = 0;
+      Iterator<Map.Entry<String, long[]>> it = statistics.entrySet().iterator();
+      while (it.hasNext()) {
+        Map.Entry<String, long[]> endpoint = it.next();
+        long[] counters = endpoint.getValue();
+        LOG.info("    " + endpoint.getKey() + ": " + counters[0] + " requests, " + counters[1]
+            + " bytes transferred, " + counters[2] + " bytes uncompressed");
+        totalCompressed += counters[1];
+        totalUncompressed += counters[2];
+      }
+      LOG.info("Web services total: " + totalCompressed + " bytes transferred, " + totalUncompressed
+          + " bytes uncompressed");
+    }
+  }
+
+  private String executeRequest(final HttpMethodBase method, final String url) {
+    method.setRequestHeader("Accept", "application/json");
+    method.setRequestHeader("Accept-Encoding", GZIP);
+    String json = null;
+    try {
+      httpClient.executeMethod(method);
+      if (method.getStatusCode() == HttpStatus.SC_OK) {
+        json = readBody(method, endpoint(url));
+      } else if (method.getStatusCode() != HttpStatus.SC_NOT_FOUND) {
+        throw new ConnectionException("HTTP error: " + method.getStatusCode() + ", msg: " + method.getStatusText()
+            + ", query: " + method);
+      }
+    } catch (HttpException e) {
+      throw new ConnectionException("Query: " + method, e);
+    } catch (IOException e) {
+      throw new ConnectionException("Query: " + method, e);
+    } finally {
+      method.releaseConnection();
+    }
+    return json;
+  }
+
+  private String readBody(final HttpMethodBase method, final String endpoint) throws IOException {
+    InputStream body = method.getResponseBodyAsStream();
+    if (body == null) {
+      return "";
+    }
+    CountingInputStream compressed = new CountingInputStream(body);
+    CountingInputStream uncompressed;
+    Header encoding = method.getResponseHeader("Content-Encoding");
+    if (encoding != null && encoding.getValue().toLowerCase().indexOf(GZIP) != -1) {
+      uncompressed = new CountingInputStream(new GZIPInputStream(compressed));
+    } else {
+      uncompressed = compressed;
+    }
+    Reader reader = new InputStreamReader(uncompressed, UTF8);
+    StringBuilder sb = new StringBuilder();
+    try {
+      char[] buffer = new char[4096];
+      int read;
+      while ((read = reader.read(buffer)) != -1) {
+        sb.append(buffer, 0, read);
+      }
+    } finally {
+      reader.close();
+    }
+    addStatistics(endpoint, compressed.getCount(), uncompressed.getCount());
+    LOG.debug(endpoint + ": " + compressed.getCount() + " bytes transferred, " + uncompressed.getCount()
+        + " bytes uncompressed");
+    return sb.toString();
+  }
+
+  private void addStatistics(final String endpoint, final long compressed, final long uncompressed) {
+    synchronized (statistics) {
+      long[] counters = statistics.get(endpoint);
+      if (counters == null) {
+        counters = new long[3];
+        statistics.put(endpoint, counters);
+      }
+      counters[0]++;
+      counters[1] += compressed;
+      counters[2] += uncompressed;
+    }
+  }
+
+  private static String endpoint(final String url) {
+    int queryStart = url.indexOf('?');
+    return queryStart == -1 ? url : url.substring(0, queryStart);
+  }
+
+  /**
+   * Counts the bytes read through it.
+   */
+  private static class CountingInputStream extends FilterInputStream {
+
+    private long count;
+
+    public CountingInputStream(final InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b != -1) {
+        count++;
+      }
+      return b;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+      int read = super.read(b, off, len);
+      if (read != -1) {
+        count += read;
+      }
+      return read;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+      long skipped = super.skip(n);
+      count += skipped;
+      return skipped;
+    }
+
+    public long getCount() {
+      return count;
+    }
+  }
+
+}
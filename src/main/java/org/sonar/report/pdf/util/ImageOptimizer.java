@@ -0,0 +1,251 @@
+/*
+ * SonarQube PDF Report
+ * Copyright (C) 2010 klicap - ingenieria del puzle
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.report.pdf.util;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.lowagie.text.BadElementException;
+import com.lowagie.text.Image;
+
+/**
+ * Downsampling and recompression of bitmap images (logos and server charts)
+ * before they are embedded: logos are downsampled to the given resolution at
+ * their largest rendered size, opaque logos are recompressed as JPEG, charts
+ * and images with transparency as PNG. The smaller of the source and the
+ * result is kept. Optimized logos are cached with the size of the source
+ * image, by hash of the source image.
+ */
+public class ImageOptimizer {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ImageOptimizer.class);
+
+  // Cached logo: scaled width and height of the source, then the optimized
+  // image (empty when the source is kept)
+  private static final int HEADER_SIZE = 8;
+
+  private final int dpi;
+  private final float quality;
+  private final ChartCache cache;
+
+  private ImageOptimizer(final int dpi, final float quality,
+      final ChartCache cache) {
+    this.dpi = dpi;
+    this.quality = quality;
+    this.cache = cache;
+  }
+
+  /**
+   * @param dpi
+   *          Resolution of the images at their rendered size
+   * @param quality
+   *          JPEG quality, from 0 to 1
+   * @param cache
+   *          Cache of the optimized images, null for no cache
+   */
+  public static ImageOptimizer getInstance(final int dpi, final float quality,
+      final ChartCache cache) {
+    return new ImageOptimizer(dpi, quality, cache);
+  }
+
+  /**
+   * Optimized image, scaled to the size of the source image (the page layout
+   * does not change).
+   *
+   * @param width
+   *          Largest rendered width in points, 0 if not bounded
+   * @param height
+   *          Largest rendered height in points, 0 if not bounded
+   */
+  public Image getImage(final URL source, final float width, final float height)
+      throws BadElementException, IOException {
+    byte[] data = ChartCache.read(source.openStream());
+    String key = null;
+    if (cache != null) {
+      key = ChartCache.getKey(data, "image", String.valueOf(width),
+          String.valueOf(height), getSettings());
+      byte[] cached = cache.get(key);
+      if (cached != null) {
+        // The source is not decoded again, its size is cached
+        return getCachedImage(data, cached);
+      }
+    }
+    Image original = Image.getInstance(data);
+    byte[] optimized = optimize(data, width, height, false);
+    if (cache != null) {
+      cache.put(key, toCacheEntry(original, optimized == data ? new byte[0] : optimized));
+    }
+    if (optimized == data) {
+      return original;
+    }
+    Image image = Image.getInstance(optimized);
+    image.scaleAbsolute(original.getScaledWidth(), original.getScaledHeight());
+    return image;
+  }
+
+  /**
+   * Server charts are drawn at their rendered size and their text must stay
+   * sharp: they are only recompressed, losslessly (PNG).
+   *
+   * @return The recompressed chart, or the source itself if it is smaller or
+   *         can not be decoded
+   */
+  public byte[] optimizeChart(final byte[] source) {
+    return optimize(source, 0, 0, true);
+  }
+
+  private byte[] optimize(final byte[] source, final float width,
+      final float height, final boolean lossless) {
+    try {
+      BufferedImage image = ImageIO.read(new ByteArrayInputStream(source));
+      if (image != null) {
+        byte[] encoded = encode(downsample(image, width, height), lossless);
+        if (encoded.length < source.length) {
+          return encoded;
+        }
+      }
+    } catch (IOException e) {
+      LOG.error("Can not optimize image", e);
+    }
+    return source;
+  }
+
+  private static byte[] toCacheEntry(final Image original, final byte[] optimized)
+      throws IOException {
+    ByteArrayOutputStream entry = new ByteArrayOutputStream(HEADER_SIZE + optimized.length);
+    DataOutputStream out = new DataOutputStream(entry);
+    out.writeFloat(original.getScaledWidth());
+    out.writeFloat(original.getScaledHeight());
+    out.write(optimized);
+    out.close();
+    return entry.toByteArray();
+  }
+
+  private static Image getCachedImage(final byte[] source, final byte[] entry)
+      throws BadElementException, IOException {
+    if (entry.length == HEADER_SIZE) {
+      return Image.getInstance(source);
+    }
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(entry));
+    float width = in.readFloat();
+    float height = in.readFloat();
+    Image image = Image.getInstance(Arrays.copyOfRange(entry, HEADER_SIZE, entry.length));
+    image.scaleAbsolute(width, height);
+    return image;
+  }
+
+  /**
+   * Settings that change the optimized images (part of the cache keys).
+   */
+  public String getSettings() {
+    return "dpi=" + dpi + ",quality=" + quality;
+  }
+
+  /**
+   * The image is halved (bilinear) until it is twice its target size, then
+   * scaled to the target size: the result is close to an area average.
+   */
+  private BufferedImage downsample(final BufferedImage image,
+      final float width, final float height) {
+    double scale = 0;
+    if (width > 0) {
+      scale = Math.max(scale, width * dpi / 72.0 / image.getWidth());
+    }
+    if (height > 0) {
+      scale = Math.max(scale, height * dpi / 72.0 / image.getHeight());
+    }
+    if (scale == 0 || scale >= 1) {
+      return image;
+    }
+    int targetWidth = Math.max(1, (int) Math.ceil(image.getWidth() * scale));
+    int targetHeight = Math.max(1, (int) Math.ceil(image.getHeight() * scale));
+    BufferedImage scaled = image;
+    int currentWidth = image.getWidth();
+    int currentHeight = image.getHeight();
+    do {
+      currentWidth = Math.max(targetWidth, currentWidth / 2);
+      currentHeight = Math.max(targetHeight, currentHeight / 2);
+      scaled = scale(scaled, currentWidth, currentHeight);
+    } while (currentWidth > targetWidth || currentHeight > targetHeight);
+    return scaled;
+  }
+
+  private static BufferedImage scale(final BufferedImage image, final int width,
+      final int height) {
+    boolean alpha = image.getColorModel().hasAlpha();
+    BufferedImage scaled = new BufferedImage(width, height,
+        alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+    Graphics2D g = scaled.createGraphics();
+    try {
+      g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+          RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+      g.drawImage(image, 0, 0, width, height, null);
+    } finally {
+      g.dispose();
+    }
+    return scaled;
+  }
+
+  private byte[] encode(final BufferedImage image, final boolean lossless)
+      throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    if (lossless || image.getColorModel().hasAlpha()) {
+      ImageIO.write(image, "png", out);
+      return out.toByteArray();
+    }
+    BufferedImage rgb = image;
+    if (image.getType() != BufferedImage.TYPE_INT_RGB
+        && image.getType() != BufferedImage.TYPE_BYTE_GRAY) {
+      rgb = scale(image, image.getWidth(), image.getHeight());
+    }
+    Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+    ImageWriter writer = writers.next();
+    ImageOutputStream stream = ImageIO.createImageOutputStream(out);
+    try {
+      writer.setOutput(stream);
+      ImageWriteParam param = writer.getDefaultWriteParam();
+      param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+      param.setCompressionQuality(quality);
+      writer.write(null, new IIOImage(rgb, null, null), param);
+    } finally {
+      writer.dispose();
+      stream.close();
+    }
+    return out.toByteArray();
+  }
+}
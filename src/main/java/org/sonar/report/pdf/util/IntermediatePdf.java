@@ -0,0 +1,142 @@
+/*
+ * SonarQube PDF Report
+ * Copyright (C) 2010 klicap - ingenieria del puzle
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.report.pdf.util;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.lowagie.text.pdf.PdfReader;
+import com.lowagie.text.pdf.RandomAccessFileOrArray;
+
+/**
+ * Intermediate PDF document (front page, TOC or body) before the merge. It is
+ * kept in memory, or spilled to a temporary file that is read back through a
+ * memory mapped file: only the objects needed by the merge are loaded.
+ */
+public class IntermediatePdf {
+
+  private static final Logger LOG = LoggerFactory.getLogger(IntermediatePdf.class);
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private File file;
+  private ByteArrayOutputStream baos;
+  private OutputStream out;
+  private PdfReader reader;
+
+  // Existing document (i.e. cached), it is not deleted
+  private boolean keep;
+
+  public IntermediatePdf(final boolean spill) throws IOException {
+    if (spill) {
+      file = File.createTempFile("sonar-pdf-", ".pdf");
+      file.deleteOnExit();
+      out = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE);
+    } else {
+      baos = new ByteArrayOutputStream();
+      out = baos;
+    }
+  }
+
+  private IntermediatePdf(final File file) {
+    this.file = file;
+    this.keep = true;
+  }
+
+  /**
+   * Existing document, read through a memory mapped file. The file is kept
+   * when the document is deleted.
+   */
+  public static IntermediatePdf open(final File file) {
+    return new IntermediatePdf(file);
+  }
+
+  /**
+   * Copy the document, once its writer is closed and before it is read.
+   */
+  public void writeTo(final OutputStream target) throws IOException {
+    if (file != null) {
+      InputStream in = new FileInputStream(file);
+      try {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+          target.write(buffer, 0, read);
+        }
+      } finally {
+        in.close();
+      }
+    } else {
+      baos.writeTo(target);
+    }
+  }
+
+  /**
+   * Stream for the PdfWriter (it is closed with the document).
+   */
+  public OutputStream getOutputStream() {
+    return out;
+  }
+
+  /**
+   * Reader on the document, once its writer is closed.
+   */
+  public PdfReader getReader() throws IOException {
+    if (reader == null) {
+      if (file != null) {
+        reader = new PdfReader(new RandomAccessFileOrArray(file.getAbsolutePath(), false, false), null);
+      } else {
+        reader = new PdfReader(baos.toByteArray());
+        baos = null;
+      }
+    }
+    return reader;
+  }
+
+  /**
+   * Close the reader and delete the temporary file.
+   */
+  public void delete() {
+    if (reader != null) {
+      reader.close();
+      reader = null;
+    }
+    if (out != null) {
+      try {
+        out.close();
+      } catch (IOException e) {
+        LOG.error("Can not close intermediate PDF", e);
+      }
+    }
+    if (file != null && !keep && !file.delete()) {
+      LOG.debug("Can not delete " + file.getAbsolutePath() + ", it will be deleted on exit");
+    }
+  }
+
+}
@@ -0,0 +1,153 @@
+/*
+ * SonarQube PDF Report
+ * Copyright (C) 2010 klicap - ingenieria del puzle
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.report.pdf.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Linearization ("fast web view") of the merged report by qpdf: iText can not
+ * write linearized documents. When qpdf fails, does not finish in time or is
+ * not installed, the report is written as it is.
+ */
+public class Linearizer {
+
+  private static final Logger LOG = LoggerFactory.getLogger(Linearizer.class);
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  // qpdf linearizes large reports in a few seconds
+  private static final long TIMEOUT_MILLIS = 5 * 60 * 1000L;
+
+  private final String command;
+
+  private Linearizer(final String command) {
+    this.command = command;
+  }
+
+  /**
+   * @param command qpdf executable (path or name in the PATH)
+   */
+  public static Linearizer getInstance(final String command) {
+    return new Linearizer(command);
+  }
+
+  /**
+   * Write the linearized report, or the report itself if it can not be
+   * linearized.
+   */
+  public void linearize(final File report, final OutputStream out)
+      throws IOException {
+    File linearized = File.createTempFile("sonar-pdf-", ".pdf");
+    try {
+      if (run(report, linearized)) {
+        copy(linearized, out);
+      } else {
+        copy(report, out);
+      }
+    } finally {
+      if (!linearized.delete()) {
+        linearized.deleteOnExit();
+      }
+    }
+  }
+
+  private boolean run(final File report, final File linearized) {
+    ProcessBuilder builder = new ProcessBuilder(command, "--linearize",
+        report.getAbsolutePath(), linearized.getAbsolutePath());
+    builder.redirectErrorStream(true);
+    final Process process;
+    try {
+      process = builder.start();
+    } catch (IOException e) {
+      LOG.error("Can not linearize PDF report (is qpdf installed?)", e);
+      return false;
+    }
+    // The process is killed if it does not finish in time
+    final AtomicBoolean killed = new AtomicBoolean(false);
+    Timer timer = new Timer("PDF report linearization timeout", true);
+    timer.schedule(new TimerTask() {
+      @Override
+      public void run() {
+        killed.set(true);
+        process.destroy();
+      }
+    }, TIMEOUT_MILLIS);
+    try {
+      process.getOutputStream().close();
+      BufferedReader output = new BufferedReader(new InputStreamReader(
+          process.getInputStream()));
+      try {
+        String line;
+        while ((line = output.readLine()) != null) {
+          LOG.debug(line);
+        }
+      } finally {
+        output.close();
+      }
+      int status = process.waitFor();
+      if (killed.get()) {
+        LOG.error("Can not linearize PDF report, " + command + " did not finish in "
+            + TIMEOUT_MILLIS / 1000 + " s");
+        return false;
+      }
+      // qpdf exit status 3: written with warnings
+      if (status == 0 || status == 3) {
+        LOG.info("PDF report linearized");
+        return true;
+      }
+      LOG.error("Can not linearize PDF report, " + command + " exit status: " + status);
+    } catch (IOException e) {
+      LOG.error("Can not linearize PDF report", e);
+    } catch (InterruptedException e) {
+      LOG.error("Can not linearize PDF report", e);
+      Thread.currentThread().interrupt();
+    } finally {
+      timer.cancel();
+      process.destroy();
+    }
+    return false;
+  }
+
+  private static void copy(final File file, final OutputStream out)
+      throws IOException {
+    InputStream in = new FileInputStream(file);
+    try {
+      byte[] buffer = new byte[BUFFER_SIZE];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+      }
+    } finally {
+      in.close();
+    }
+  }
+}
@@ -0,0 +1,328 @@
+/*
+ * SonarQube PDF Report
+ * Copyright (C) 2010 klicap - ingenieria del puzle
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.report.pdf.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import com.lowagie.text.Document;
+import com.lowagie.text.DocumentException;
+import com.lowagie.text.pdf.BadPdfFormatException;
+import com.lowagie.text.pdf.PRStream;
+import com.lowagie.text.pdf.PdfArray;
+import com.lowagie.text.pdf.PdfCopy;
+import com.lowagie.text.pdf.PdfDictionary;
+import com.lowagie.text.pdf.PdfName;
+import com.lowagie.text.pdf.PdfObject;
+import com.lowagie.text.pdf.PdfReader;
+import com.lowagie.text.pdf.PdfSmartCopy;
+import com.lowagie.text.pdf.PdfStream;
+
+/**
+ * Deflate of the streams of the intermediate documents on a pool of threads,
+ * while they are merged. Intermediate documents are written with the
+ * compression level {@link Deflater#NO_COMPRESSION} (stored blocks, no CPU
+ * spent on compression). When a page is copied to the report, its stored
+ * streams are replaced by the same data deflated with the report level, as
+ * the writer would have done it: the report is the same as without parallel
+ * compression. Streams of the next pages are read and compressed ahead,
+ * within a window of pages, so only the window is kept in memory.
+ */
+public class ParallelDeflater {
+
+  // Pages read ahead of the page being copied, per thread
+  private static final int PAGES_PER_THREAD = 2;
+
+  private static final int ZLIB_HEADER_SIZE = 2;
+
+  private final ExecutorService executor;
+  private final int window;
+  private final int level;
+
+  // Streams compressed ahead: <stream, compressed data>
+  private final Map<StreamKey, Future<byte[]>> pending = new HashMap<StreamKey, Future<byte[]>>();
+
+  // Streams already read ahead, each stream is compressed once
+  private final Set<StreamKey> submitted = new HashSet<StreamKey>();
+
+  /**
+   * @param level Deflate level of the report, -1 for the default level
+   */
+  public ParallelDeflater(final int threads, final int level) {
+    this.executor = Executors.newFixedThreadPool(threads);
+    this.window = threads * PAGES_PER_THREAD;
+    this.level = level;
+  }
+
+  /**
+   * Copy of the intermediate documents to the report, their stored streams
+   * are deflated by this deflater.
+   *
+   * @param smart
+   *          Identical streams are stored once (PdfSmartCopy)
+   */
+  public PdfCopy createCopy(final Document document, final OutputStream out,
+      final boolean smart) throws DocumentException {
+    if (smart) {
+      return new PdfSmartCopy(document, out) {
+        @Override
+        protected PdfStream copyStream(final PRStream stream) throws IOException, BadPdfFormatException {
+          return deflate(stream, super.copyStream(stream));
+        }
+      };
+    }
+    return new PdfCopy(document, out) {
+      @Override
+      protected PdfStream copyStream(final PRStream stream) throws IOException, BadPdfFormatException {
+        return deflate(stream, super.copyStream(stream));
+      }
+    };
+  }
+
+  /**
+   * Copy the pages [1, last] of the document, the streams of the next pages
+   * are compressed meanwhile.
+   *
+   * @param copy
+   *          Copy created by {@link #createCopy(Document, OutputStream, boolean)}
+   */
+  public void addPages(final PdfCopy copy, final PdfReader reader, final int last)
+      throws IOException, BadPdfFormatException {
+    List<List<StreamKey>> pages = new ArrayList<List<StreamKey>>();
+    int next = 1;
+    for (int i = 1; i <= last; i++) {
+      while (next <= last && next < i + window) {
+        pages.add(readAhead(reader, next));
+        next++;
+      }
+      copy.addPage(copy.getImportedPage(reader, i));
+      // Streams of the page not copied (i.e. stored once by PdfSmartCopy)
+      Iterator<StreamKey> it = pages.remove(0).iterator();
+      while (it.hasNext()) {
+        Future<byte[]> data = pending.remove(it.next());
+        if (data != null) {
+          data.cancel(false);
+        }
+      }
+    }
+  }
+
+  public void shutdown() {
+    executor.shutdownNow();
+    pending.clear();
+    submitted.clear();
+  }
+
+  /**
+   * Deflate the data as PdfWriter does.
+   */
+  public static byte[] compress(final byte[] data, final int level)
+      throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+    Deflater deflater = new Deflater(level);
+    try {
+      DeflaterOutputStream zip = new DeflaterOutputStream(out, deflater);
+      zip.write(data);
+      zip.close();
+    } finally {
+      deflater.end();
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Submit the compression of the stored streams of a page: contents and
+   * XObjects (with the XObjects of forms). Streams are read in the calling
+   * thread, the reader is not thread safe.
+   *
+   * @return The submitted streams
+   */
+  private List<StreamKey> readAhead(final PdfReader reader, final int page)
+      throws IOException {
+    List<StreamKey> keys = new ArrayList<StreamKey>();
+    PdfDictionary pageDictionary = reader.getPageNRelease(page);
+    PdfObject contents = PdfReader.getPdfObjectRelease(pageDictionary.get(PdfName.CONTENTS));
+    if (contents != null && contents.isArray()) {
+      Iterator<?> it = ((PdfArray) contents).getArrayList().iterator();
+      while (it.hasNext()) {
+        readAhead(PdfReader.getPdfObjectRelease((PdfObject) it.next()), keys);
+      }
+    } else {
+      readAhead(contents, keys);
+    }
+    readAheadResources(pageDictionary, keys);
+    return keys;
+  }
+
+  private void readAheadResources(final PdfDictionary dictionary, final List<StreamKey> keys)
+      throws IOException {
+    PdfDictionary resources = (PdfDictionary) PdfReader.getPdfObjectRelease(dictionary.get(PdfName.RESOURCES));
+    PdfDictionary xObjects = resources != null
+        ? (PdfDictionary) PdfReader.getPdfObjectRelease(resources.get(PdfName.XOBJECT)) : null;
+    if (xObjects == null) {
+      return;
+    }
+    Iterator<?> it = xObjects.getKeys().iterator();
+    while (it.hasNext()) {
+      PdfObject xObject = PdfReader.getPdfObjectRelease(xObjects.get((PdfName) it.next()));
+      if (readAhead(xObject, keys) && PdfName.FORM.equals(((PdfDictionary) xObject).get(PdfName.SUBTYPE))) {
+        readAheadResources((PdfDictionary) xObject, keys);
+      }
+    }
+  }
+
+  /**
+   * @return false if the stream was already read ahead
+   */
+  private boolean readAhead(final PdfObject object, final List<StreamKey> keys) throws IOException {
+    if (object == null || !object.isStream() || ((PRStream) object).getOffset() < 0) {
+      return false;
+    }
+    PRStream stream = (PRStream) object;
+    StreamKey key = new StreamKey(stream);
+    if (!submitted.add(key)) {
+      return false;
+    }
+    if (isFilteredByFlate(stream)) {
+      final byte[] data = PdfReader.getStreamBytesRaw(stream);
+      if (isStored(data)) {
+        pending.put(key, executor.submit(new Callable<byte[]>() {
+          public byte[] call() throws IOException {
+            return compress(PdfReader.FlateDecode(data), level);
+          }
+        }));
+        keys.add(key);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Replace the data of the copy of a stored stream by its deflated data.
+   */
+  private PdfStream deflate(final PRStream stream, final PdfStream copy) throws IOException {
+    if (!isFilteredByFlate(stream)) {
+      return copy;
+    }
+    Future<byte[]> data = stream.getOffset() >= 0 ? pending.remove(new StreamKey(stream)) : null;
+    byte[] bytes;
+    if (data != null) {
+      bytes = get(data);
+    } else {
+      // Not read ahead (i.e. fonts)
+      byte[] raw = PdfReader.getStreamBytesRaw(stream);
+      if (!isStored(raw)) {
+        return copy;
+      }
+      bytes = compress(PdfReader.FlateDecode(raw), level);
+    }
+    // Keys are put back in the same order, the dictionary is written as the
+    // dictionary of the deflated stream would be
+    List<PdfName> keys = new ArrayList<PdfName>();
+    Iterator<?> it = copy.getKeys().iterator();
+    while (it.hasNext()) {
+      keys.add((PdfName) it.next());
+    }
+    Map<PdfName, PdfObject> values = new HashMap<PdfName, PdfObject>();
+    for (PdfName key : keys) {
+      values.put(key, copy.get(key));
+    }
+    ((PRStream) copy).setData(bytes, false);
+    values.put(PdfName.LENGTH, copy.get(PdfName.LENGTH));
+    for (PdfName key : keys) {
+      copy.remove(key);
+    }
+    for (PdfName key : keys) {
+      copy.put(key, values.get(key));
+    }
+    return copy;
+  }
+
+  /**
+   * Streams deflated by the writer: FlateDecode is the only filter and there
+   * are no decode parameters (predictors of PNG images copied as they are).
+   */
+  private static boolean isFilteredByFlate(final PRStream stream) {
+    return PdfName.FLATEDECODE.equals(stream.get(PdfName.FILTER)) && stream.get(PdfName.DECODEPARMS) == null;
+  }
+
+  /**
+   * Data deflated with stored blocks only (level 0): the first block of the
+   * zlib stream is not compressed.
+   */
+  private static boolean isStored(final byte[] data) {
+    return data.length > ZLIB_HEADER_SIZE && (data[0] & 0x0F) == Deflater.DEFLATED
+        && (data[ZLIB_HEADER_SIZE] & 0x06) == 0;
+  }
+
+  private static byte[] get(final Future<byte[]> data) throws IOException {
+    try {
+      return data.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Can not compress PDF stream", e);
+    } catch (ExecutionException e) {
+      throw new IOException("Can not compress PDF stream", e.getCause());
+    }
+  }
+
+  /**
+   * Stream of a document, identified by its offset in the document.
+   */
+  private static final class StreamKey {
+
+    private final PdfReader reader;
+    private final int offset;
+
+    StreamKey(final PRStream stream) {
+      this.reader = stream.getReader();
+      this.offset = stream.getOffset();
+    }
+
+    @Override
+    public boolean equals(final Object object) {
+      if (!(object instanceof StreamKey)) {
+        return false;
+      }
+      StreamKey key = (StreamKey) object;
+      return reader == key.reader && offset == key.offset;
+    }
+
+    @Override
+    public int hashCode() {
+      return System.identityHashCode(reader) * 31 + offset;
+    }
+  }
+}
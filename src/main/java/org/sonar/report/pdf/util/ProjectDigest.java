@@ -0,0 +1,158 @@
+/*
+ * SonarQube PDF Report
+ * Copyright (C) 2010 klicap - ingenieria del puzle
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.report.pdf.util;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeSet;
+
+import org.sonar.report.pdf.entity.FileInfo;
+import org.sonar.report.pdf.entity.Measure;
+import org.sonar.report.pdf.entity.Measures;
+import org.sonar.report.pdf.entity.Project;
+import org.sonar.report.pdf.entity.Rule;
+import org.sonar.report.pdf.entity.Violation;
+
+/**
+ * SHA-1 of the data printed in the chapter of a project (dashboard measures,
+ * rules and files), used as key of the rendered chapters cache. Values are
+ * added in a fixed order, so the same data always gives the same key. Data
+ * not printed in the chapter (analysis date and version, raw values) is left
+ * out: the key does not change from one analysis to the next if the chapter
+ * does not.
+ */
+public class ProjectDigest {
+
+  private final MessageDigest digest;
+
+  public ProjectDigest() {
+    try {
+      digest = MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      // SHA-1 is supported by every JVM
+      throw new IllegalStateException("Can not compute project digest", e);
+    }
+  }
+
+  public ProjectDigest update(final String... values) {
+    for (String value : values) {
+      try {
+        digest.update(String.valueOf(value).getBytes("UTF-8"));
+      } catch (UnsupportedEncodingException e) {
+        throw new IllegalStateException("Can not compute project digest", e);
+      }
+      digest.update((byte) 0);
+    }
+    return this;
+  }
+
+  public ProjectDigest update(final Properties properties) {
+    for (String key : new TreeSet<String>(properties.stringPropertyNames())) {
+      update(key, properties.getProperty(key));
+    }
+    return this;
+  }
+
+  /**
+   * Data printed in the chapter of a project.
+   *
+   * @param metricKeys
+   *          Metrics printed in the chapter
+   */
+  public ProjectDigest update(final Project project, final Collection<String> metricKeys) {
+    update(project.getKey(), project.getName());
+    update(project.getMeasures(), metricKeys);
+    if (project.getMostViolatedRules() != null) {
+      for (Rule rule : project.getMostViolatedRules()) {
+        update(rule.getKey(), rule.getName(), rule.getViolationsNumberFormatted());
+      }
+    }
+    update("");
+    update(project.getMostViolatedFiles());
+    update(project.getMostComplexFiles());
+    update(project.getMostDuplicatedFiles());
+    return this;
+  }
+
+  /**
+   * Files and lines of the violations of the most violated rules, for the
+   * chapters that print the violations details.
+   */
+  public ProjectDigest updateViolations(final Project project) {
+    if (project.getMostViolatedRules() != null) {
+      for (Rule rule : project.getMostViolatedRules()) {
+        update(rule.getKey());
+        Iterable<Violation> violations = rule.getViolations();
+        if (violations != null) {
+          for (Violation violation : violations) {
+            update(violation.getResource(), violation.getLine());
+          }
+        }
+        update("");
+      }
+    }
+    update("");
+    return this;
+  }
+
+  /**
+   * @return The digest as an hexadecimal string (the digest is reset)
+   */
+  public String getKey() {
+    StringBuilder key = new StringBuilder();
+    for (byte b : digest.digest()) {
+      key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return key.toString();
+  }
+
+  private void update(final Measures measures, final Collection<String> metricKeys) {
+    if (measures == null) {
+      return;
+    }
+    for (String key : new TreeSet<String>(metricKeys)) {
+      Measure measure = measures.getMeasure(key);
+      if (measure != null) {
+        update(key, measure.getFormatValue(),
+            String.valueOf(measure.getQualitativeTendency()),
+            String.valueOf(measure.getQuantitativeTendency()));
+      } else {
+        update(key);
+      }
+    }
+  }
+
+  private void update(final List<FileInfo> files) {
+    if (files == null) {
+      update("");
+      return;
+    }
+    for (FileInfo file : files) {
+      update(file.getKey(), file.getName(), file.getViolations(),
+          file.getComplexity(), file.getDuplicatedLines());
+    }
+    update("");
+  }
+
+}
@@ -0,0 +1,145 @@
+/*
+ * SonarQube PDF Report
+ * Copyright (C) 2010 klicap - ingenieria del puzle
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.report.pdf.util;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.sonar.report.pdf.entity.Violation;
+
+/**
+ * Violations of a rule grouped by file, in one pass over the violations: one
+ * row per file (sorted by resource key) with its line numbers sorted and
+ * joined into ranges, i.e. "12-18, 40". Only the line numbers are kept, so
+ * violations can be read from the full issues export without loading them.
+ */
+public class ViolationGroups {
+
+  private final Map<String, FileViolations> files = new TreeMap<String, FileViolations>();
+
+  public static ViolationGroups group(final Iterator<Violation> violations) {
+    ViolationGroups groups = new ViolationGroups();
+    while (violations.hasNext()) {
+      groups.add(violations.next());
+    }
+    return groups;
+  }
+
+  public void add(final Violation violation) {
+    String resource = violation.getResource();
+    FileViolations file = files.get(resource);
+    if (file == null) {
+      file = new FileViolations(resource);
+      files.put(resource, file);
+    }
+    file.addLine(violation.getLine());
+  }
+
+  /**
+   * Rows sorted by resource key.
+   */
+  public Collection<FileViolations> getFiles() {
+    return files.values();
+  }
+
+  /**
+   * Line numbers of the violations in one file.
+   */
+  public static class FileViolations {
+
+    private final String resource;
+    private int[] lines = new int[4];
+    private int size;
+
+    // Lines that are not numbers (i.e. violations on the whole file)
+    private Set<String> others;
+
+    FileViolations(final String resource) {
+      this.resource = resource;
+    }
+
+    void addLine(final String line) {
+      int number;
+      try {
+        number = Integer.parseInt(line);
+      } catch (NumberFormatException e) {
+        if (others == null) {
+          others = new LinkedHashSet<String>();
+        }
+        others.add(String.valueOf(line));
+        return;
+      }
+      if (size == lines.length) {
+        lines = Arrays.copyOf(lines, size * 2);
+      }
+      lines[size++] = number;
+    }
+
+    public String getResource() {
+      return resource;
+    }
+
+    /**
+     * File name, without the directories of the resource key.
+     */
+    public String getFileName() {
+      return resource.substring(resource.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * Sorted line numbers, consecutive lines are joined into ranges: "12-18, 40".
+     */
+    public String getLineRanges() {
+      StringBuilder ranges = new StringBuilder();
+      Arrays.sort(lines, 0, size);
+      int i = 0;
+      while (i < size) {
+        int first = lines[i];
+        int last = first;
+        i++;
+        while (i < size && lines[i] <= last + 1) {
+          last = lines[i];
+          i++;
+        }
+        if (ranges.length() > 0) {
+          ranges.append(", ");
+        }
+        ranges.append(first);
+        if (last != first) {
+          ranges.append('-').append(last);
+        }
+      }
+      if (others != null) {
+        for (String other : others) {
+          if (ranges.length() > 0) {
+            ranges.append(", ");
+          }
+          ranges.append(other);
+        }
+      }
+      return ranges.toString();
+    }
+  }
+}
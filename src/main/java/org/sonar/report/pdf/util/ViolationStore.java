@@ -0,0 +1,217 @@
+/*
+ * SonarQube PDF Report
+ * Copyright (C) 2010 klicap - ingenieria del puzle
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.report.pdf.util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.report.pdf.entity.Violation;
+
+/**
+ * Append-only temporary file for the violations of the full issues export.
+ * Each violation is a fixed size record (component id, line) and the
+ * violations of a rule are a contiguous range of records, so only the
+ * component keys stay on the heap. Ranges are either appended or, when the
+ * violations of several rules are read in the same pass, reserved then
+ * filled. Ranges are read back through a memory mapped buffer.
+ */
+public class ViolationStore {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ViolationStore.class);
+
+  private static final int RECORD_SIZE = 8;
+  private static final int NO_LINE = -1;
+  private static final String NO_LINE_TEXT = "N/A";
+
+  private final File file;
+  private final DataOutputStream out;
+  private RandomAccessFile in;
+
+  // Consecutive reserved records [reservedStart, reservedEnd), and their
+  // writable mapping up to mappedEnd
+  private long reservedStart;
+  private long reservedEnd;
+  private MappedByteBuffer reserved;
+  private long mappedEnd;
+
+  // Interned component keys: <component key, component id>
+  private final Map<String, Integer> componentIds = new HashMap<String, Integer>();
+  private final List<String> components = new ArrayList<String>();
+
+  private long size;
+
+  public ViolationStore() throws IOException {
+    file = File.createTempFile("sonar-pdf-issues", ".bin");
+    file.deleteOnExit();
+    out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+  }
+
+  /**
+   * Number of records written so far. Use it before and after adding the
+   * violations of a rule to get its range.
+   */
+  public synchronized long size() {
+    return size;
+  }
+
+  public synchronized void add(final String component, final Integer line) throws IOException {
+    out.writeInt(getComponentId(component));
+    out.writeInt(line == null ? NO_LINE : line.intValue());
+    size++;
+  }
+
+  /**
+   * Reserve a range of records, to be written with
+   * {@link #set(long, String, Integer)}. Consecutive ranges are mapped
+   * together, they can be written until a record is appended.
+   *
+   * @return First record of the range
+   */
+  public synchronized long reserve(final long count) throws IOException {
+    long start = size;
+    if (start != reservedEnd) {
+      reservedStart = start;
+      reserved = null;
+    }
+    if ((start + count - reservedStart) * RECORD_SIZE > Integer.MAX_VALUE) {
+      throw new IOException("Can not reserve " + count + " violations, at most "
+          + Integer.MAX_VALUE / RECORD_SIZE + " violations can be read in one pass");
+    }
+    for (long i = 0; i < count; i++) {
+      out.writeLong(0);
+    }
+    size += count;
+    reservedEnd = size;
+    return start;
+  }
+
+  /**
+   * Write a reserved record.
+   */
+  public synchronized void set(final long index, final String component, final Integer line) {
+    if (index < reservedStart || index >= reservedEnd) {
+      throw new IllegalArgumentException("Record " + index + " is not reserved");
+    }
+    if (reserved == null || index >= mappedEnd) {
+      reserved = map(reservedStart, reservedEnd, FileChannel.MapMode.READ_WRITE);
+      mappedEnd = reservedEnd;
+    }
+    int position = (int) (index - reservedStart) * RECORD_SIZE;
+    reserved.putInt(position, getComponentId(component));
+    reserved.putInt(position + RECORD_SIZE / 2, line == null ? NO_LINE : line.intValue());
+  }
+
+  /**
+   * Violations in the records range [start, end).
+   */
+  public Iterable<Violation> getViolations(final long start, final long end) {
+    return new Iterable<Violation>() {
+      public Iterator<Violation> iterator() {
+        return new ViolationIterator(map(start, end, FileChannel.MapMode.READ_ONLY));
+      }
+    };
+  }
+
+  /**
+   * Close and delete the temporary file.
+   */
+  public synchronized void close() {
+    try {
+      reserved = null;
+      out.close();
+      if (in != null) {
+        in.close();
+      }
+    } catch (IOException e) {
+      LOG.error("Can not close violations store", e);
+    }
+    if (!file.delete()) {
+      LOG.debug("Can not delete " + file.getAbsolutePath() + ", it will be deleted on exit");
+    }
+    LOG.debug(size + " violations stored, " + components.size() + " components");
+  }
+
+  private int getComponentId(final String component) {
+    Integer componentId = componentIds.get(component);
+    if (componentId == null) {
+      componentId = Integer.valueOf(components.size());
+      componentIds.put(component, componentId);
+      components.add(component);
+    }
+    return componentId.intValue();
+  }
+
+  private synchronized MappedByteBuffer map(final long start, final long end, final FileChannel.MapMode mode) {
+    try {
+      out.flush();
+      if (in == null) {
+        in = new RandomAccessFile(file, "rw");
+      }
+      return in.getChannel().map(mode, start * RECORD_SIZE, (end - start) * RECORD_SIZE);
+    } catch (IOException e) {
+      throw new IllegalStateException("Can not read violations store", e);
+    }
+  }
+
+  private synchronized String getComponent(final int componentId) {
+    return components.get(componentId);
+  }
+
+  private class ViolationIterator implements Iterator<Violation> {
+
+    private final MappedByteBuffer buffer;
+
+    public ViolationIterator(final MappedByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    public boolean hasNext() {
+      return buffer.remaining() >= RECORD_SIZE;
+    }
+
+    public Violation next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      String component = getComponent(buffer.getInt());
+      int line = buffer.getInt();
+      return new Violation(line == NO_LINE ? NO_LINE_TEXT : String.valueOf(line), component, "");
+    }
+
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+}
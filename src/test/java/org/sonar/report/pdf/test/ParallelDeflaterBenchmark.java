@@ -0,0 +1,146 @@
+/*
+ * SonarQube PDF Report
+ * Copyright (C) 2010 klicap - ingenieria del puzle
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.report.pdf.test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.Deflater;
+
+import org.sonar.report.pdf.util.ParallelDeflater;
+
+import com.lowagie.text.Document;
+import com.lowagie.text.pdf.BaseFont;
+import com.lowagie.text.pdf.PdfContentByte;
+import com.lowagie.text.pdf.PdfCopy;
+import com.lowagie.text.pdf.PdfReader;
+import com.lowagie.text.pdf.PdfWriter;
+
+/**
+ * Timing of the merged assembly with parallel compression, from 1 thread to
+ * the number of processors, against the serial path (intermediate document
+ * deflated by its writer). Each run writes the intermediate document and
+ * copies it. Not a TestNG test, run it after mvn test-compile with:
+ *
+ * <pre>
+ * java -cp target/classes:target/test-classes:&lt;iText jar&gt; org.sonar.report.pdf.test.ParallelDeflaterBenchmark [pages [threads]]
+ * </pre>
+ *
+ * The report size is printed too: it must be the same for all the runs.
+ */
+public final class ParallelDeflaterBenchmark {
+
+  private static final int DEFAULT_PAGES = 2000;
+  private static final int LINES_BY_PAGE = 60;
+  private static final int LEVEL = Deflater.DEFAULT_COMPRESSION;
+
+  private static final int WARMUP_RUNS = 2;
+  private static final int RUNS = 5;
+
+  private ParallelDeflaterBenchmark() {
+  }
+
+  public static void main(final String[] args) throws Exception {
+    int pages = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PAGES;
+    int processors = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+    System.out.println(pages + " pages, up to " + processors + " threads");
+    print("serial", pages, 0);
+    for (int threads = 1; threads < processors; threads *= 2) {
+      print(threads + " threads", pages, threads);
+    }
+    print(processors + " threads", pages, processors);
+  }
+
+  /**
+   * @param threads
+   *          0 for the serial path
+   */
+  private static void print(final String name, final int pages, final int threads) throws Exception {
+    for (int i = 0; i < WARMUP_RUNS; i++) {
+      run(pages, threads);
+    }
+    long best = Long.MAX_VALUE;
+    int size = 0;
+    for (int i = 0; i < RUNS; i++) {
+      long start = System.nanoTime();
+      size = run(pages, threads);
+      best = Math.min(best, System.nanoTime() - start);
+    }
+    System.out.println(String.format("%-12s best %8.1f ms, %,d bytes", name, best / 1e6, size));
+  }
+
+  /**
+   * @return Size of the report
+   */
+  private static int run(final int pages, final int threads) throws Exception {
+    byte[] pdf = createPdf(pages, threads > 0 ? Deflater.NO_COMPRESSION : LEVEL);
+    ParallelDeflater deflater = threads > 0 ? new ParallelDeflater(threads, LEVEL) : null;
+    ByteArrayOutputStream out = new ByteArrayOutputStream(pdf.length);
+    PdfReader reader = new PdfReader(pdf);
+    Document document = new Document(reader.getPageSizeWithRotation(1));
+    try {
+      PdfCopy copy = deflater != null ? deflater.createCopy(document, out, false) : new PdfCopy(document, out);
+      document.open();
+      if (deflater != null) {
+        deflater.addPages(copy, reader, reader.getNumberOfPages());
+      } else {
+        for (int i = 1; i <= reader.getNumberOfPages(); i++) {
+          copy.addPage(copy.getImportedPage(reader, i));
+        }
+      }
+      document.close();
+    } finally {
+      if (deflater != null) {
+        deflater.shutdown();
+      }
+    }
+    return out.size();
+  }
+
+  /**
+   * Intermediate document: pages of table-like text, as in the workbook.
+   */
+  private static byte[] createPdf(final int pages, final int level) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Document document = new Document();
+    PdfWriter writer = PdfWriter.getInstance(document, out);
+    writer.setCompressionLevel(level);
+    document.open();
+    BaseFont font = BaseFont.createFont();
+    for (int page = 0; page < pages; page++) {
+      document.newPage();
+      PdfContentByte canvas = writer.getDirectContent();
+      for (int line = 0; line < LINES_BY_PAGE; line++) {
+        float y = document.top() - line * 12;
+        canvas.beginText();
+        canvas.setFontAndSize(font, 9);
+        canvas.setTextMatrix(document.left(), y);
+        canvas.showText("org/sonar/core/package" + (page % 100) + "/File" + page + ".java");
+        canvas.setTextMatrix(document.right() - 80, y);
+        int first = (line * 7 + page) % 500;
+        canvas.showText(first + "-" + (first + 3) + ", " + (first + 40));
+        canvas.endText();
+        canvas.rectangle(document.left(), y - 3, document.right() - document.left(), 12);
+        canvas.stroke();
+      }
+    }
+    document.close();
+    return out.toByteArray();
+  }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * SonarQube PDF Report
+ * Copyright (C) 2010 klicap - ingenieria del puzle
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.report.pdf.test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.Deflater;
+
+import org.sonar.report.pdf.util.ParallelDeflater;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.lowagie.text.Document;
+import com.lowagie.text.Image;
+import com.lowagie.text.Paragraph;
+import com.lowagie.text.pdf.PdfCopy;
+import com.lowagie.text.pdf.PdfReader;
+import com.lowagie.text.pdf.PdfTemplate;
+import com.lowagie.text.pdf.PdfWriter;
+
+public class ParallelDeflaterTest {
+
+  private static final int LEVEL = 9;
+
+  @Test(groups = { "util" })
+  public void shouldBeSameAsSerialWriter() throws Exception {
+    byte[] serial = copy(createPdf(LEVEL), null);
+    byte[] parallel = copy(createPdf(Deflater.NO_COMPRESSION), new ParallelDeflater(4, LEVEL));
+    Assert.assertEquals(maskIds(parallel), maskIds(serial));
+  }
+
+  @Test(groups = { "util" })
+  public void shouldNotDependOnThreads() throws Exception {
+    byte[] pdf = createPdf(Deflater.NO_COMPRESSION);
+    Assert.assertEquals(maskIds(copy(pdf, new ParallelDeflater(4, LEVEL))),
+        maskIds(copy(pdf, new ParallelDeflater(1, LEVEL))));
+  }
+
+  /**
+   * Pages with text, a template shared by the pages and a raw image.
+   */
+  private static byte[] createPdf(final int level) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Document document = new Document();
+    PdfWriter writer = PdfWriter.getInstance(document, out);
+    writer.setCompressionLevel(level);
+    document.open();
+    PdfTemplate template = writer.getDirectContent().createTemplate(100, 20);
+    template.rectangle(0, 0, 100, 20);
+    template.stroke();
+    byte[] pixels = new byte[64 * 64 * 3];
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] = (byte) (i % 251);
+    }
+    Image image = Image.getInstance(64, 64, 3, 8, pixels);
+    for (int i = 0; i < 500; i++) {
+      document.add(new Paragraph("Line " + i));
+      if (i % 50 == 0) {
+        writer.getDirectContent().addTemplate(template, 36, 36);
+        document.add(image);
+      }
+    }
+    document.close();
+    return out.toByteArray();
+  }
+
+  private static byte[] copy(final byte[] pdf, final ParallelDeflater deflater) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    PdfReader reader = new PdfReader(pdf);
+    Document document = new Document(reader.getPageSizeWithRotation(1));
+    try {
+      PdfCopy copy = deflater != null ? deflater.createCopy(document, out, false) : new PdfCopy(document, out);
+      document.open();
+      if (deflater != null) {
+        deflater.addPages(copy, reader, reader.getNumberOfPages());
+      } else {
+        for (int i = 1; i <= reader.getNumberOfPages(); i++) {
+          copy.addPage(copy.getImportedPage(reader, i));
+        }
+      }
+      document.close();
+    } finally {
+      if (deflater != null) {
+        deflater.shutdown();
+      }
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Document id and dates change from one document to the next.
+   */
+  private static String maskIds(final byte[] pdf) throws Exception {
+    return new String(pdf, "ISO-8859-1").replaceAll("/ID ?\\[<[0-9a-fA-F]+> ?<[0-9a-fA-F]+>\\]", "/ID[]")
+        .replaceAll("\\(D:[0-9+\\-Z']+\\)", "(D:)");
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * SonarQube PDF Report
+ * Copyright (C) 2010 klicap - ingenieria del puzle
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.report.pdf.test;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+
+import org.sonar.report.pdf.entity.FileInfo;
+import org.sonar.report.pdf.entity.Measure;
+import org.sonar.report.pdf.entity.Measures;
+import org.sonar.report.pdf.entity.Project;
+import org.sonar.report.pdf.entity.Rule;
+import org.sonar.report.pdf.entity.Violation;
+import org.sonar.report.pdf.util.ProjectDigest;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class ProjectDigestTest {
+
+  private static final Collection<String> METRIC_KEYS = Arrays.asList("ncloc", "coverage");
+
+  @Test(groups = { "util" })
+  public void analysesWithSameMeasuresShouldHaveSameKey() throws ParseException {
+    Project monday = createModule(new Date(1000000000000L), "1.0", "1,200");
+    Project tuesday = createModule(new Date(1000086400000L), "1.1-SNAPSHOT", "1,200");
+
+    Assert.assertEquals(new ProjectDigest().update(tuesday, METRIC_KEYS).getKey(),
+        new ProjectDigest().update(monday, METRIC_KEYS).getKey());
+  }
+
+  @Test(groups = { "util" })
+  public void printedMeasureChangeShouldChangeKey() throws ParseException {
+    Project monday = createModule(new Date(1000000000000L), "1.0", "1,200");
+    Project tuesday = createModule(new Date(1000086400000L), "1.0", "1,201");
+
+    Assert.assertFalse(new ProjectDigest().update(tuesday, METRIC_KEYS).getKey()
+        .equals(new ProjectDigest().update(monday, METRIC_KEYS).getKey()));
+  }
+
+  @Test(groups = { "util" })
+  public void movedViolationShouldChangeKey() throws ParseException {
+    Project monday = createModule(new Date(1000000000000L), "1.0", "1,200");
+    Project tuesday = createModule(new Date(1000086400000L), "1.0", "1,200");
+    tuesday.getMostViolatedRules().get(0).setViolations(Arrays.asList(
+        new Violation("42", "org.sonar.core.Main", null),
+        new Violation("58", "org.sonar.core.Util", null)));
+
+    Assert.assertEquals(new ProjectDigest().update(tuesday, METRIC_KEYS).getKey(),
+        new ProjectDigest().update(monday, METRIC_KEYS).getKey());
+    Assert.assertFalse(new ProjectDigest().update(tuesday, METRIC_KEYS).updateViolations(tuesday)
+        .getKey().equals(new ProjectDigest().update(monday, METRIC_KEYS)
+            .updateViolations(monday).getKey()));
+  }
+
+  private static Project createModule(final Date date, final String version, final String ncloc)
+      throws ParseException {
+    Project project = new Project("org.codehaus.sonar:sonar-core");
+    project.setName("Sonar Core");
+    Measures measures = new Measures();
+    measures.setDate(date);
+    measures.setVersion(version);
+    measures.addMeasure("ncloc", createMeasure("ncloc", ncloc));
+    measures.addMeasure("coverage", createMeasure("coverage", "81.5%"));
+    project.setMeasures(measures);
+    Rule rule = new Rule();
+    rule.setKey("squid:S00112");
+    rule.setName("Generic exceptions should never be thrown");
+    rule.setViolationsNumberFormatted("2");
+    rule.setViolations(Arrays.asList(new Violation("42", "org.sonar.core.Main", null),
+        new Violation("57", "org.sonar.core.Util", null)));
+    project.setMostViolatedRules(new ArrayList<Rule>(Arrays.asList(rule)));
+    project.setMostViolatedFiles(new ArrayList<FileInfo>());
+    project.setMostComplexFiles(new ArrayList<FileInfo>());
+    project.setMostDuplicatedFiles(new ArrayList<FileInfo>());
+    return project;
+  }
+
+  private static Measure createMeasure(final String key, final String formatValue) {
+    Measure measure = new Measure();
+    measure.setKey(key);
+    measure.setFormatValue(formatValue);
+    measure.setValue(formatValue.replace(",", ""));
+    return measure;
+  }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * SonarQube PDF Report
+ * Copyright (C) 2010 klicap - ingenieria del puzle
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.report.pdf.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.sonar.report.pdf.entity.Violation;
+import org.sonar.report.pdf.util.ViolationGroups;
+import org.sonar.report.pdf.util.ViolationGroups.FileViolations;
+
+/**
+ * Timing of the workbook violations grouping at 10k, 100k and 1M violations
+ * (JMH needs Java 7, the plugin targets Java 6). Not a TestNG test, run it
+ * after mvn test-compile with:
+ *
+ * <pre>
+ * java -cp target/classes:target/test-classes org.sonar.report.pdf.test.ViolationGroupsBenchmark
+ * </pre>
+ */
+public final class ViolationGroupsBenchmark {
+
+  private static final int[] SIZES = { 10000, 100000, 1000000 };
+
+  // Violations by file, as for a rule violated all over a large project
+  private static final int VIOLATIONS_BY_FILE = 50;
+  private static final int LINES_BY_FILE = 2000;
+
+  private static final int WARMUP_RUNS = 5;
+  private static final int RUNS = 10;
+
+  private ViolationGroupsBenchmark() {
+  }
+
+  public static void main(final String[] args) {
+    for (int size : SIZES) {
+      List<Violation> violations = createViolations(size);
+      for (int i = 0; i < WARMUP_RUNS; i++) {
+        run(violations);
+      }
+      long best = Long.MAX_VALUE;
+      long total = 0;
+      int rows = 0;
+      for (int i = 0; i < RUNS; i++) {
+        long start = System.nanoTime();
+        rows = run(violations);
+        long time = System.nanoTime() - start;
+        best = Math.min(best, time);
+        total += time;
+      }
+      System.out.println(String.format("%,9d violations, %,6d rows: best %8.2f ms, mean %8.2f ms", size, rows,
+          best / 1e6, total / 1e6 / RUNS));
+    }
+  }
+
+  /**
+   * Group the violations and build the rows text, as the workbook does.
+   *
+   * @return Number of rows
+   */
+  private static int run(final List<Violation> violations) {
+    int rows = 0;
+    int length = 0;
+    for (FileViolations file : ViolationGroups.group(violations.iterator()).getFiles()) {
+      length += file.getFileName().length() + file.getLineRanges().length();
+      rows++;
+    }
+    if (length == 0) {
+      throw new IllegalStateException("No rows");
+    }
+    return rows;
+  }
+
+  /**
+   * Violations of random files and lines, in random order (fixed seed).
+   */
+  private static List<Violation> createViolations(final int size) {
+    Random random = new Random(size);
+    int files = Math.max(1, size / VIOLATIONS_BY_FILE);
+    List<Violation> violations = new ArrayList<Violation>(size);
+    for (int i = 0; i < size; i++) {
+      int file = random.nextInt(files);
+      String line = String.valueOf(random.nextInt(LINES_BY_FILE) + 1);
+      violations.add(new Violation(line, "org.codehaus.sonar:sonar-core:src/main/java/org/sonar/core/package"
+          + file % 100 + "/File" + file + ".java", ""));
+    }
+    return violations;
+  }
+
+}
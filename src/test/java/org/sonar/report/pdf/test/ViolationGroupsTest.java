@@ -0,0 +1,68 @@
+/*
+ * SonarQube PDF Report
+ * Copyright (C) 2010 klicap - ingenieria del puzle
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.report.pdf.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.sonar.report.pdf.entity.Violation;
+import org.sonar.report.pdf.util.ViolationGroups;
+import org.sonar.report.pdf.util.ViolationGroups.FileViolations;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class ViolationGroupsTest {
+
+  @Test(groups = { "util" })
+  public void shouldGroupViolationsByFile() {
+    List<Violation> violations = Arrays.asList(
+        new Violation("40", "src/org/B.java", null),
+        new Violation("13", "src/org/A.java", null),
+        new Violation("12", "src/org/A.java", null),
+        new Violation("3", "src/org/B.java", null),
+        new Violation("14", "src/org/A.java", null),
+        new Violation("18", "src/org/A.java", null),
+        new Violation("14", "src/org/A.java", null),
+        new Violation("null", "src/org/B.java", null));
+    Iterator<FileViolations> files = ViolationGroups.group(violations.iterator())
+        .getFiles().iterator();
+
+    FileViolations file = files.next();
+    Assert.assertEquals(file.getFileName(), "A.java");
+    Assert.assertEquals(file.getLineRanges(), "12-14, 18");
+    file = files.next();
+    Assert.assertEquals(file.getFileName(), "B.java");
+    Assert.assertEquals(file.getLineRanges(), "3, 40, null");
+    Assert.assertFalse(files.hasNext());
+  }
+
+  @Test(groups = { "util" })
+  public void shouldJoinConsecutiveLines() {
+    List<Violation> violations = new ArrayList<Violation>();
+    for (int line = 100000; line > 0; line--) {
+      violations.add(new Violation(String.valueOf(line), "A.java", null));
+    }
+    FileViolations file = ViolationGroups.group(violations.iterator())
+        .getFiles().iterator().next();
+    Assert.assertEquals(file.getLineRanges(), "1-100000");
+  }
+}